@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.reactivex.functions.Consumer;
+
+/**
+ ************************************************
+ * AsyncProcess.append() throughput(reflective path).
+ * <br>
+ * append: iterate ClosableResult.
+ * push: runPush() without buffer.
+ * @author f.kinoshita
+ ************************************************
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncProcessBenchmark {
+
+    static final int SIZE = 100000;
+
+    @Param({"4096"})
+    int bufSize;
+
+    static AsyncProcess<Integer> newProcess() {
+        return new AsyncProcess<Integer>() {
+            @Override
+            protected void execute() throws Exception {
+                for (int i = 0; i < SIZE; i++) {
+                    append(i);
+                }
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void append(Blackhole bh) throws Exception {
+        AsyncProcess<Integer> proc = newProcess();
+        try (ClosableResult<Integer> results = proc.run(bufSize)) {
+            for (Integer value : results) {
+                bh.consume(value);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void push(final Blackhole bh) throws Exception {
+        newProcess().runPush(new Consumer<Integer>() {
+            @Override
+            public void accept(Integer value) {
+                bh.consume(value);
+            }
+        });
+    }
+}
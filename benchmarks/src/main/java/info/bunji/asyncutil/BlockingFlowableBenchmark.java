@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ ************************************************
+ * BlockingFlowable iteration throughput.
+ * <br>
+ * sync: values are emitted on the reading thread(buffer only).<br>
+ * async: values are emitted by another thread(buffer and thread handoff).<br>
+ * asyncAdaptive: async with adaptive buffer sizing(bufSize is the initial size).
+ * @author f.kinoshita
+ ************************************************
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingFlowableBenchmark {
+
+    static final int SIZE = 100000;
+
+    @Param({"256", "4096"})
+    int bufSize;
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void sync(Blackhole bh) {
+        Flowable<Integer> source = Flowable.range(0, SIZE);
+        for (Integer value : new BlockingFlowable<>(source, bufSize, false)) {
+            bh.consume(value);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void async(Blackhole bh) {
+        Flowable<Integer> source = Flowable.range(0, SIZE).subscribeOn(Schedulers.computation(), false);
+        for (Integer value : new BlockingFlowable<>(source, bufSize, false)) {
+            bh.consume(value);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void asyncAdaptive(Blackhole bh) {
+        Flowable<Integer> source = Flowable.range(0, SIZE).subscribeOn(Schedulers.computation(), false);
+        BufferSizer sizer = new BufferSizer(bufSize, 16, 8192, System.nanoTime());
+        for (Integer value : new BlockingFlowable<>(source, bufSize, false, null, sizer)) {
+            bh.consume(value);
+        }
+    }
+}
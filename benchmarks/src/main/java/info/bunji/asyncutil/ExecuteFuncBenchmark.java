@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
+
+/**
+ ************************************************
+ * ExecuteFunc.append() / appendAll() throughput.
+ * @author f.kinoshita
+ ************************************************
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecuteFuncBenchmark {
+
+    static final int SIZE = 100000;
+
+    static final int PAGE_SIZE = 1000;
+
+    @Param({"false", "true"})
+    boolean direct;
+
+    @Param({"4096"})
+    int bufSize;
+
+    private final Integer[] page = new Integer[PAGE_SIZE];
+
+    public ExecuteFuncBenchmark() {
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page[i] = i;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void append(Blackhole bh) throws Exception {
+        ExecuteFunc<Integer> func = new ExecuteFunc<Integer>() {
+            @Override
+            public void execute() throws Exception {
+                for (int i = 0; i < SIZE; i++) {
+                    append(page[i % PAGE_SIZE]);
+                }
+            }
+        };
+        consume(func, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void appendAll(Blackhole bh) throws Exception {
+        final List<Integer> list = Arrays.asList(page);
+        ExecuteFunc<Integer> func = new ExecuteFunc<Integer>() {
+            @Override
+            public void execute() throws Exception {
+                for (int i = 0; i < SIZE; i += PAGE_SIZE) {
+                    appendAll(list);
+                }
+            }
+        };
+        consume(func, bh);
+    }
+
+    private void consume(ExecuteFunc<Integer> func, Blackhole bh) throws Exception {
+        RunOptions options = new RunOptions().setBufSize(bufSize).setDirect(direct);
+        try (ClosableResult<Integer> results = new AsyncProc<Integer>(func).run(options)) {
+            for (Integer value : results) {
+                bh.consume(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ ************************************************
+ * AsyncIntervalProcess tick overhead.
+ * <br>
+ * runs {@value #TICKS} ticks with {@value #INTERVAL}ms interval.
+ * the ideal time is {@code (TICKS - 1) * INTERVAL}ms, the rest is the
+ * overhead of process start, scheduling and delivery.
+ * @author f.kinoshita
+ ************************************************
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntervalProcessBenchmark {
+
+    static final int TICKS = 20;
+
+    static final long INTERVAL = 1;
+
+    @Benchmark
+    public int ticks() throws Exception {
+        AsyncIntervalProcess<Integer> proc = new AsyncIntervalProcess<Integer>(INTERVAL) {
+            private int count = 0;
+
+            @Override
+            protected boolean executeInterval() throws Exception {
+                append(++count);
+                return count < TICKS;
+            }
+        };
+        int cnt = 0;
+        try (ClosableResult<Integer> results = proc.run()) {
+            for (@SuppressWarnings("unused") Integer value : results) {
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
+
+/**
+ ************************************************
+ * end-to-end latency by buffer size.
+ * <br>
+ * firstElement: run() to the first value read by the iterator.<br>
+ * stream: run() to the end of a {@value #SIZE} values stream.
+ * @author f.kinoshita
+ ************************************************
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LatencyBenchmark {
+
+    static final int SIZE = 10000;
+
+    @Param({"16", "256", "4096"})
+    int bufSize;
+
+    @Param({"false", "true"})
+    boolean direct;
+
+    @Benchmark
+    public Integer firstElement() throws Exception {
+        try (ClosableResult<Integer> results = newProc(SIZE).run(options())) {
+            return results.iterator().next();
+        }
+    }
+
+    @Benchmark
+    public long stream() throws Exception {
+        long sum = 0;
+        try (ClosableResult<Integer> results = newProc(SIZE).run(options())) {
+            for (Integer value : results) {
+                sum += value;
+            }
+        }
+        return sum;
+    }
+
+    private RunOptions options() {
+        return new RunOptions().setBufSize(bufSize).setDirect(direct);
+    }
+
+    private static AsyncProc<Integer> newProc(final int size) {
+        return new AsyncProc<>(new ExecuteFunc<Integer>() {
+            @Override
+            public void execute() throws Exception {
+                for (int i = 0; i < size; i++) {
+                    append(i);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
+
+/**
+ ************************************************
+ * LongAsyncProc vs AsyncProc&lt;Long&gt; throughput.
+ * <br>
+ * run with {@code -prof gc} to compare allocation per value.
+ * @author f.kinoshita
+ ************************************************
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimitiveProcBenchmark {
+
+    static final int SIZE = 100000;
+
+    @Param({"4096"})
+    int bufSize;
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void boxed(Blackhole bh) throws Exception {
+        ExecuteFunc<Long> func = new ExecuteFunc<Long>() {
+            @Override
+            public void execute() throws Exception {
+                for (long i = 0; i < SIZE; i++) {
+                    append(i + 1000);
+                }
+            }
+        };
+        RunOptions options = new RunOptions().setBufSize(bufSize).setDirect(true);
+        try (ClosableResult<Long> results = new AsyncProc<Long>(func).run(options)) {
+            for (Long value : results) {
+                bh.consume(value.longValue());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void primitive(Blackhole bh) throws Exception {
+        LongExecuteFunc func = new LongExecuteFunc() {
+            @Override
+            public void execute() throws Exception {
+                for (long i = 0; i < SIZE; i++) {
+                    append(i + 1000);
+                }
+            }
+        };
+        try (LongClosableResult results = new LongAsyncProc(func).run(bufSize)) {
+            PrimitiveIterator.OfLong it = results.iterator();
+            while (it.hasNext()) {
+                bh.consume(it.nextLong());
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ ************************************************
+ * schedule + cancel cost with many resident timers.
+ * <br>
+ * {@value #RESIDENT} timers are scheduled one hour ahead before measuring.
+ * see {@link TimerFootprint} for memory and tick jitter.
+ * @author f.kinoshita
+ ************************************************
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimerBenchmark {
+
+    static final int RESIDENT = 100000;
+
+    static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+            // do nothing.
+        }
+    };
+
+    @Param({"wheel", "executor"})
+    String timer;
+
+    private ScheduledExecutorService ses;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ses = newTimer(timer);
+        for (int i = 0; i < RESIDENT; i++) {
+            ses.schedule(NOOP, 1, TimeUnit.HOURS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ses.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean scheduleCancel() {
+        ScheduledFuture<?> f = ses.schedule(NOOP, 30, TimeUnit.MINUTES);
+        return f.cancel(false);
+    }
+
+    static ScheduledExecutorService newTimer(String type) {
+        if ("wheel".equals(type)) {
+            return new HashedWheelTimer();
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2,
+                                                    AsyncExecutors.newThreadFactory("bench-timer"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
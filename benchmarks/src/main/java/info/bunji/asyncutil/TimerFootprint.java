@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ ************************************************
+ * heap per timer and firing jitter of the timer backends.
+ * <br>
+ * not a JMH benchmark. run with:
+ * <pre>
+ * java -cp target/benchmarks.jar info.bunji.asyncutil.TimerFootprint
+ * </pre>
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class TimerFootprint {
+
+    static final int TIMERS = 100000;
+
+    static final int JITTER_SAMPLES = 5000;
+
+    private TimerFootprint() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String type : new String[] { "wheel", "executor" }) {
+            System.out.printf("%-8s heap/timer=%5d bytes  %s%n", type, heapPerTimer(type), jitter(type));
+        }
+    }
+
+    private static long heapPerTimer(String type) throws Exception {
+        ScheduledExecutorService ses = TimerBenchmark.newTimer(type);
+        try {
+            long before = usedHeap();
+            for (int i = 0; i < TIMERS; i++) {
+                ses.schedule(TimerBenchmark.NOOP, 1, TimeUnit.HOURS);
+            }
+            // let the wheel move pending timers into buckets
+            Thread.sleep(100);
+            long after = usedHeap();
+            return (after - before) / TIMERS;
+        } finally {
+            ses.shutdownNow();
+        }
+    }
+
+    private static String jitter(String type) throws Exception {
+        ScheduledExecutorService ses = TimerBenchmark.newTimer(type);
+        try {
+            final long[] late = new long[JITTER_SAMPLES];
+            final CountDownLatch latch = new CountDownLatch(JITTER_SAMPLES);
+            Random random = new Random(1);
+            for (int i = 0; i < JITTER_SAMPLES; i++) {
+                final int idx = i;
+                final long delay = TimeUnit.MILLISECONDS.toNanos(10 + random.nextInt(990));
+                final long due = System.nanoTime() + delay;
+                ses.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        late[idx] = System.nanoTime() - due;
+                        latch.countDown();
+                    }
+                }, delay, TimeUnit.NANOSECONDS);
+            }
+            latch.await();
+            Arrays.sort(late);
+            return String.format("late p50=%.2fms p99=%.2fms max=%.2fms",
+                                    late[JITTER_SAMPLES / 2] / 1e6,
+                                    late[JITTER_SAMPLES * 99 / 100] / 1e6,
+                                    late[JITTER_SAMPLES - 1] / 1e6);
+        } finally {
+            ses.shutdownNow();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ ************************************************
+ * library-wide executor settings.
+ *
+ * <p>by default, every {@link ClosableResult} runs its producer and delivery
+ * on a shared pool of named daemon threads. idle threads are reused and
+ * released after {@value #KEEP_ALIVE_SEC} seconds.<br>
+ * the pool has at most {@link #getDefaultMaxThreads()} threads
+ * (system property {@code asyncutil.maxThreads}, default max(64, 8 * processors)).
+ * when all threads are busy, new tasks wait in a FIFO queue until a thread
+ * is free. they are never rejected or run on the caller.<br>
+ * a running process holds its thread while it waits for the consumer, and
+ * a run uses up to two threads(producer and delivery). if every thread is
+ * held by a waiting producer, the queued deliveries stall until a result is
+ * closed, so keep the concurrent runs below half of the limit, or pass a
+ * {@link Scheduler} to {@code run()}(e.g. {@code Schedulers.from(executor)}).
+ *
+ * <p>on JDK 21 or later, processes can run on virtual threads with
+ * {@link #newVirtualThreadScheduler()}. the waits in {@code append()} and
+ * {@code hasNext()} then do not hold a platform thread.<br>
+ * to use virtual threads by default, set the system property
+ * {@code asyncutil.virtualThreads=true}.
+ *
+ * <p>{@link AsyncIntervalProcess} runs its intervals on a shared
+ * {@link ScheduledExecutorService}(see {@link #getDefaultScheduledExecutor()}).
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class AsyncExecutors {
+
+    /** idle thread keep alive time(sec) */
+    static final long KEEP_ALIVE_SEC = 60L;
+
+    /** system property for use virtual threads by default */
+    static final String VIRTUAL_THREADS_PROPERTY = "asyncutil.virtualThreads";
+
+    /** system property for max threads of the default pool */
+    static final String MAX_THREADS_PROPERTY = "asyncutil.maxThreads";
+
+    private static final int MAX_THREADS;
+
+    private static final ExecutorService DEFAULT_EXECUTOR;
+
+    private static final Scheduler DEFAULT_SCHEDULER;
+
+    private static volatile Scheduler scheduler;
+
+    private static final ScheduledExecutorService DEFAULT_SCHEDULED_EXECUTOR;
+
+    private static volatile ScheduledExecutorService scheduledExecutor;
+
+    static {
+        int maxThreads = Integer.getInteger(MAX_THREADS_PROPERTY,
+                                            Math.max(64, 8 * Runtime.getRuntime().availableProcessors()));
+        MAX_THREADS = Math.max(maxThreads, 2);
+        // grows up to the limit, then queues. idle threads are released.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                                            KEEP_ALIVE_SEC, TimeUnit.SECONDS,
+                                            new LinkedBlockingQueue<Runnable>(),
+                                            newThreadFactory("asyncutil-worker"));
+        executor.allowCoreThreadTimeOut(true);
+        DEFAULT_EXECUTOR = executor;
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY) && isVirtualThreadSupported()) {
+            DEFAULT_SCHEDULER = newVirtualThreadScheduler();
+        } else {
+            DEFAULT_SCHEDULER = Schedulers.from(executor);
+        }
+        scheduler = DEFAULT_SCHEDULER;
+
+        // threads are started on first schedule
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(
+                                            Math.max(2, Runtime.getRuntime().availableProcessors()),
+                                            newThreadFactory("asyncutil-timer"));
+        timer.setRemoveOnCancelPolicy(true);
+        DEFAULT_SCHEDULED_EXECUTOR = timer;
+        scheduledExecutor = DEFAULT_SCHEDULED_EXECUTOR;
+    }
+
+    private AsyncExecutors() {
+        // do nothing.
+    }
+
+    /**
+     **********************************
+     * get default scheduler.
+     * @return default scheduler
+     **********************************
+     */
+    public static Scheduler getDefaultScheduler() {
+        return scheduler;
+    }
+
+    /**
+     **********************************
+     * set default scheduler.
+     * @param newScheduler default scheduler. if null, use the initial default scheduler.
+     **********************************
+     */
+    public static void setDefaultScheduler(Scheduler newScheduler) {
+        scheduler = newScheduler != null ? newScheduler : DEFAULT_SCHEDULER;
+    }
+
+    /**
+     **********************************
+     * get shared executor.
+     * <br>
+     * at most {@link #getDefaultMaxThreads()} threads. tasks are queued
+     * while all threads are busy.
+     * @return shared executor
+     **********************************
+     */
+    public static ExecutorService getDefaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+
+    /**
+     **********************************
+     * get max threads of the shared executor.
+     * @return max thread count
+     **********************************
+     */
+    public static int getDefaultMaxThreads() {
+        return MAX_THREADS;
+    }
+
+    /**
+     **********************************
+     * get default executor for interval processes.
+     * <br>
+     * the initial executor has max(2, available processors) daemon threads,
+     * and removes cancelled tasks immediately.
+     * @return scheduled executor
+     **********************************
+     */
+    public static ScheduledExecutorService getDefaultScheduledExecutor() {
+        return scheduledExecutor;
+    }
+
+    /**
+     **********************************
+     * set default executor for interval processes.
+     * @param executor scheduled executor. if null, use the initial default executor.
+     **********************************
+     */
+    public static void setDefaultScheduledExecutor(ScheduledExecutorService executor) {
+        scheduledExecutor = executor != null ? executor : DEFAULT_SCHEDULED_EXECUTOR;
+    }
+
+    /**
+     **********************************
+     * create thread factory for named daemon threads.
+     * @param prefix thread name prefix
+     * @return thread factory
+     **********************************
+     */
+    public static ThreadFactory newThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     **********************************
+     * check virtual threads are available.
+     * @return true if running on JDK 21 or later
+     **********************************
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.FACTORY_METHOD != null;
+    }
+
+    /**
+     **********************************
+     * create executor that starts a new virtual thread for each task.
+     * @return virtual thread executor
+     * @throws UnsupportedOperationException if virtual threads are not available
+     **********************************
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("virtual threads require JDK 21 or later.");
+        }
+        try {
+            return (ExecutorService) VirtualThreads.FACTORY_METHOD.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("can not create virtual thread executor.", e);
+        }
+    }
+
+    /**
+     **********************************
+     * create scheduler that runs processes and deliveries on virtual threads.
+     * @return virtual thread scheduler
+     * @throws UnsupportedOperationException if virtual threads are not available
+     **********************************
+     */
+    public static Scheduler newVirtualThreadScheduler() {
+        return Schedulers.from(newVirtualThreadExecutor());
+    }
+
+    /*
+     * lazy holder for virtual thread executor factory.
+     * (looked up by reflection to keep running on older JDK)
+     */
+    private static final class VirtualThreads {
+        static final Method FACTORY_METHOD;
+
+        static {
+            Method m = null;
+            try {
+                m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            } catch (NoSuchMethodException e) {
+                // not supported.
+            }
+            FACTORY_METHOD = m;
+        }
+    }
+}
@@ -15,14 +15,28 @@
  */
 package info.bunji.asyncutil;
 
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Cancellable;
 
 /**
  ************************************************
  * interval execute process.
  *
+ * <p>each run is triggered by a shared {@link ScheduledExecutorService}
+ * (see {@link AsyncExecutors#getDefaultScheduledExecutor()}), and
+ * {@link #executeInterval()} is called on a worker thread
+ * (see {@link #setWorkerScheduler(Scheduler)}).
+ * no thread is held between intervals, and append() blocked by a slow
+ * consumer never holds a thread of the scheduled executor.
+ *
+ * <p>the next run is scheduled by {@link IntervalPolicy}
+ * (default {@link IntervalPolicy#FIXED_RATE}).
+ * drift and overrun of the runs are available from {@link #getIntervalStats()}.
+ *
  * @author Fumiharu Kinoshita
  ************************************************
  */
@@ -31,6 +45,21 @@ public abstract class AsyncIntervalProcess<T> extends AsyncProcess<T> {
 	/** processing interval(ms). */
 	private long interval;
 
+	/** executor for interval task. if null, use default */
+	private volatile ScheduledExecutorService executor = null;
+
+	/** scheduler for executeInterval(). if null, use default */
+	private volatile Scheduler worker = null;
+
+	/** scheduling policy */
+	private volatile IntervalPolicy policy = IntervalPolicy.FIXED_RATE;
+
+	/** max interval(ms) for adaptive policy */
+	private volatile long maxInterval;
+
+	/** statistics of current run */
+	private volatile IntervalStats stats;
+
 	/**
 	 **********************************
 	 * consrctor.
@@ -43,6 +72,74 @@ public abstract class AsyncIntervalProcess<T> extends AsyncProcess<T> {
 			throw new IllegalArgumentException("interval is greater than 0.");
 		}
 		this.interval = interval;
+		this.maxInterval = interval * 16;
+		this.stats = new IntervalStats(TimeUnit.MILLISECONDS.toNanos(interval));
+	}
+
+	/**
+	 **********************************
+	 * set executor for interval task.
+	 * <br>
+	 * the executor only triggers the runs.
+	 * @param executor scheduled executor. if null, use {@link AsyncExecutors#getDefaultScheduledExecutor()}
+	 * @return this instance
+	 **********************************
+	 */
+	public final AsyncIntervalProcess<T> setScheduledExecutor(ScheduledExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 **********************************
+	 * set scheduler for executeInterval().
+	 * @param worker worker scheduler. if null, use {@link AsyncExecutors#getDefaultScheduler()}
+	 * @return this instance
+	 **********************************
+	 */
+	public final AsyncIntervalProcess<T> setWorkerScheduler(Scheduler worker) {
+		this.worker = worker;
+		return this;
+	}
+
+	/**
+	 **********************************
+	 * set scheduling policy.
+	 * @param policy scheduling policy(default {@link IntervalPolicy#FIXED_RATE})
+	 * @return this instance
+	 **********************************
+	 */
+	public final AsyncIntervalProcess<T> setIntervalPolicy(IntervalPolicy policy) {
+		if (policy == null) {
+			throw new IllegalArgumentException("policy can not null.");
+		}
+		this.policy = policy;
+		return this;
+	}
+
+	/**
+	 **********************************
+	 * set max interval for {@link IntervalPolicy#ADAPTIVE}.
+	 * @param maxInterval max interval(millis). default 16 times of interval
+	 * @return this instance
+	 **********************************
+	 */
+	public final AsyncIntervalProcess<T> setMaxInterval(long maxInterval) {
+		if (maxInterval < interval) {
+			throw new IllegalArgumentException("maxInterval is interval or greater.");
+		}
+		this.maxInterval = maxInterval;
+		return this;
+	}
+
+	/**
+	 **********************************
+	 * get scheduling statistics of the current(or last) run.
+	 * @return statistics
+	 **********************************
+	 */
+	public final IntervalStats getIntervalStats() {
+		return stats;
 	}
 
 	/**
@@ -55,59 +152,167 @@ public abstract class AsyncIntervalProcess<T> extends AsyncProcess<T> {
 	 */
 	protected abstract boolean executeInterval() throws Exception;
 
-    /*
-     **********************************
-     * @see info.bunji.asyncutil.AsyncProcess#execute()
-     **********************************
-     */
-    @Override
-    protected final void execute() throws Exception {
-
-        final Timer timer = new Timer(false);
-        final CountDownLatch latch = new CountDownLatch(1);
-
-        ExecTimerTask task = new ExecTimerTask(latch, timer);
-        timer.scheduleAtFixedRate(task, 0, interval);
-
-        // wait execute finish
-        latch.await();
-        timer.cancel();
+	/*
+	 **********************************
+	 * @see info.bunji.asyncutil.AsyncProcess#execute()
+	 **********************************
+	 */
+	@Override
+	protected final void execute() throws Exception {
+		ScheduledExecutorService ses = executor != null ? executor : AsyncExecutors.getDefaultScheduledExecutor();
+		Scheduler w = worker != null ? worker : AsyncExecutors.getDefaultScheduler();
 
-        if (task.exception != null) {
-        	throw task.exception;
-        }
+		// return without waiting. the task completes the stream.
+		IntervalTask task = new IntervalTask(ses, w);
+		getAsyncProc().deferComplete(task);
+		task.start();
 	}
 
 	protected final void dispose() {
 		getAsyncProc().dispose();
 	}
 
+	/**
+	 **********************************
+	 * get current time for scheduling.(overridden in tests)
+	 * @return current time(ns)
+	 **********************************
+	 */
+	long nanoTime() {
+		return System.nanoTime();
+	}
+
 	/*
-	 * internal execute timer task
+	 * internal interval task.(reschedules itself after each run)
 	 */
-    private final class ExecTimerTask extends TimerTask {
-        private volatile Exception exception = null;
-        private final CountDownLatch latch;
-        private final Timer timer;
-
-        private ExecTimerTask(CountDownLatch latch, Timer timer) {
-        	this.latch = latch;
-        	this.timer = timer;
-        }
-
-        @Override
-        public void run() {
-            try {
-                if (getAsyncProc().isDisposed() || !executeInterval()) {
-                    timer.cancel();
-                    latch.countDown();
-                }
-            } catch (Exception e) {
-                // set exception.
-                exception = e;
-                timer.cancel();
-                latch.countDown();
-            }
-        }
-    }
+	private final class IntervalTask implements Runnable, Cancellable {
+		private final ScheduledExecutorService ses;
+		private final Scheduler worker;
+		private final IntervalPolicy policy = AsyncIntervalProcess.this.policy;
+		private final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+		private final long maxNanos = TimeUnit.MILLISECONDS.toNanos(maxInterval);
+		private final IntervalStats stats = new IntervalStats(intervalNanos);
+		/** scheduled time of next run */
+		private long scheduledTime;
+		private long currentNanos = intervalNanos;
+		/** pending run(guarded by this) */
+		private ScheduledFuture<?> future = null;
+		/** true if cancelled(written in the guard of this) */
+		private volatile boolean cancelled = false;
+
+		/** executeInterval() on the worker */
+		private final Runnable body = new Runnable() {
+			@Override
+			public void run() {
+				runInterval();
+			}
+		};
+
+		private IntervalTask(ScheduledExecutorService ses, Scheduler worker) {
+			this.ses = ses;
+			this.worker = worker;
+			AsyncIntervalProcess.this.stats = stats;
+		}
+
+		private void start() {
+			scheduledTime = nanoTime();
+			schedule(0);
+		}
+
+		private void schedule(long delay) {
+			RuntimeException error = null;
+			synchronized (this) {
+				// checked in the same guard as cancel()
+				if (cancelled || getAsyncProc().isDisposed()) {
+					return;
+				}
+				try {
+					future = ses.schedule(this, delay, TimeUnit.NANOSECONDS);
+				} catch (RuntimeException e) {
+					error = e;
+				}
+			}
+			if (error != null) {
+				getAsyncProc().complete(error);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				if (future != null) {
+					future.cancel(false);
+					future = null;
+				}
+			}
+		}
+
+		/*
+		 * called on the scheduled executor. never blocks.
+		 */
+		@Override
+		public void run() {
+			try {
+				worker.scheduleDirect(body);
+			} catch (RuntimeException e) {
+				getAsyncProc().complete(e);
+			}
+		}
+
+		private void runInterval() {
+			AsyncProc<T> proc = getAsyncProc();
+			long start = nanoTime();
+			stats.run(Math.max(start - scheduledTime, 0));
+			long processed = proc.getProcessedCount();
+			try {
+				if (proc.isDisposed() || !executeInterval()) {
+					proc.complete(null);
+					return;
+				}
+			} catch (Throwable t) {
+				// set exception.
+				proc.complete(t);
+				return;
+			}
+			if (cancelled) {
+				return;
+			}
+
+			long end = nanoTime();
+			if (end - start > intervalNanos) {
+				stats.overrun(end - start - intervalNanos);
+			}
+
+			long next;
+			switch (policy) {
+			case FIXED_DELAY:
+				next = end + intervalNanos;
+				break;
+			case SKIP_MISSED:
+				next = scheduledTime + intervalNanos;
+				if (next < end) {
+					long missed = (end - scheduledTime) / intervalNanos;
+					stats.skipped(missed);
+					next = scheduledTime + (missed + 1) * intervalNanos;
+				}
+				break;
+			case ADAPTIVE:
+				if (proc.getProcessedCount() == processed) {
+					currentNanos = Math.min(currentNanos * 2, maxNanos);
+				} else {
+					currentNanos = Math.max(currentNanos / 2, intervalNanos);
+				}
+				stats.setCurrentInterval(currentNanos);
+				next = end + currentNanos;
+				break;
+			default:
+				// FIXED_RATE(missed runs are executed without delay)
+				next = scheduledTime + intervalNanos;
+				break;
+			}
+			scheduledTime = next;
+			schedule(Math.max(next - nanoTime(), 0));
+		}
+	}
 }
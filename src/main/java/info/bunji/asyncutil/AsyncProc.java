@@ -15,19 +15,37 @@
  */
 package info.bunji.asyncutil;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import info.bunji.asyncutil.functions.FlowMetricsListener;
 import info.bunji.asyncutil.functions.PostFunc;
+import info.bunji.asyncutil.functions.Serializer;
+import info.bunji.asyncutil.functions.Weigher;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
 import io.reactivex.FlowableEmitter;
 import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Cancellable;
+import io.reactivex.functions.Consumer;
 import io.reactivex.functions.LongConsumer;
+import io.reactivex.internal.util.BackpressureHelper;
+import io.reactivex.internal.util.ExceptionHelper;
 
 /**
  ************************************************
@@ -50,8 +68,51 @@ public final class AsyncProc<T> implements FlowableOnSubscribe<T>, Disposable {
 
     private volatile Throwable exception = null;
 
+    /** true if execute() returned or threw */
+    private volatile boolean finished = false;
+
     private AtomicBoolean isDisposed = new AtomicBoolean(false);
 
+    /** thread running execute()(guarded by runnerLock) */
+    private Thread runner = null;
+
+    /** true if runner was interrupted by dispose(guarded by runnerLock) */
+    private boolean interrupted = false;
+
+    /** true if disposed while runner is set(guarded by runnerLock) */
+    private boolean releasePending = false;
+
+    private final Object runnerLock = new Object();
+
+    /** close time(ns). -1 if not closed while running */
+    private long closeNanos = -1;
+
+    /** completed when disposed and execute() returned */
+    private final CompletableFuture<ExecResult> released = new CompletableFuture<>();
+
+    /** if true, execute() returns without completing the stream */
+    private volatile boolean deferred = false;
+
+    private final AtomicBoolean isCompleted = new AtomicBoolean(false);
+
+    /** called on dispose(deferred process or spill) */
+    private volatile Cancellable onDispose = null;
+
+    private final FlowMetrics metrics = new FlowMetrics();
+
+    /** byte budget of buffered values(nullable) */
+    private ByteBudget budget = null;
+
+    /** spill serializer(nullable) */
+    private Serializer<T> spillSerializer = null;
+
+    private File spillDir = null;
+
+    private long spillSegmentBytes = SpillBuffer.DEFAULT_SEGMENT_BYTES;
+
+    /** push mode consumer(nullable) */
+    private Consumer<? super T> pushConsumer = null;
+
     private static final PostFunc EMPTY_POST_FUNC = new PostFunc() {
         @Override
 		public void execute(ExecResult result) {
@@ -83,6 +144,8 @@ public final class AsyncProc<T> implements FlowableOnSubscribe<T>, Disposable {
             throw new IllegalStateException("ExecuteAction already set.");
         }
         execFunc = callback;
+        execFunc.metrics = metrics;
+        metrics.setProcess(callback.getClass().getName(), System.identityHashCode(this));
         return this;
     }
 
@@ -103,26 +166,148 @@ public final class AsyncProc<T> implements FlowableOnSubscribe<T>, Disposable {
         return this;
     }
 
+    /**
+     **********************************
+     * set flow control event listener.
+     * @param listener listener. if null, remove listener
+     * @return this instance
+     **********************************
+     */
+    public AsyncProc<T> setMetricsListener(FlowMetricsListener listener) {
+        metrics.setListener(listener);
+        return this;
+    }
+
+    /**
+     **********************************
+     * bound the buffered values by bytes.
+     * <br>
+     * append() blocks while the weight of the values not yet read exceeds
+     * maxBytes, in addition to the element count bound of bufSize.
+     * a single value larger than maxBytes is emitted when nothing is buffered.
+     * the budget is shared by all threads calling append(), but the values
+     * must still be emitted by one thread at a time.
+     * <pre>
+     * {@code
+     * proc.setWeigher(new Weigher<byte[]>() {
+     *   public long weigh(byte[] doc) {
+     *     return doc.length;
+     *   }
+     * }, 64 * 1024 * 1024);
+     * }
+     * </pre>
+     * @param weigher element size calculator. if null, remove the bound
+     * @param maxBytes max buffered bytes
+     * @return this instance
+     **********************************
+     */
+    public AsyncProc<T> setWeigher(Weigher<? super T> weigher, long maxBytes) {
+        budget = weigher != null ? new ByteBudget(weigher, maxBytes) : null;
+        return this;
+    }
+
+    /**
+     **********************************
+     * spill values to files while the consumer is not requesting.
+     * <br>
+     * append() never blocks. when the result buffer is full, values are
+     * written to segment files in java.io.tmpdir and read back in order,
+     * so the process can finish and release its resources early.
+     * the files are deleted when read or when the result is closed.
+     * an exception in the process is emitted after the spilled values.
+     * @param serializer value serializer. if null, disable spill
+     * @return this instance
+     **********************************
+     */
+    public AsyncProc<T> setSpill(Serializer<T> serializer) {
+        return setSpill(serializer, null, SpillBuffer.DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     **********************************
+     * spill values to files while the consumer is not requesting.
+     * @param serializer value serializer. if null, disable spill
+     * @param dir directory for spill files. if null, use java.io.tmpdir
+     * @param segmentBytes max segment file size(default 64MB, up to Integer.MAX_VALUE)
+     * @return this instance
+     * @see #setSpill(Serializer)
+     **********************************
+     */
+    public AsyncProc<T> setSpill(Serializer<T> serializer, File dir, long segmentBytes) {
+        if (segmentBytes <= 0) {
+            throw new IllegalArgumentException("segmentBytes is greater than 0.");
+        }
+        if (segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentBytes is Integer.MAX_VALUE or less.");
+        }
+        this.spillSerializer = serializer;
+        this.spillDir = dir;
+        this.spillSegmentBytes = segmentBytes;
+        return this;
+    }
+
+    ByteBudget getByteBudget() {
+        return budget;
+    }
+
+    FlowMetrics getMetrics() {
+        return metrics;
+    }
+
     ExecuteFunc<T> getExecFunc() {
         return execFunc;
     }
 
+    long getProcessedCount() {
+        return execFunc.processedCnt.get();
+    }
+
     @Override
     public void dispose() {
+        dispose(ClosableResult.CloseMode.ABORT);
+    }
+
+    /**
+     **********************************
+     * dispose process.
+     * @param mode if ABORT, interrupt the thread running execute()
+     **********************************
+     */
+    void dispose(ClosableResult.CloseMode mode) {
     	if (!isDisposed.getAndSet(true)) {
+            boolean running;
+            synchronized (runnerLock) {
+                running = runner != null;
+                if (running && !finished && runner != Thread.currentThread()) {
+                    closeNanos = System.nanoTime();
+                    if (mode == ClosableResult.CloseMode.ABORT) {
+                        // wake up the process blocked in I/O or sleep
+                        runner.interrupt();
+                        interrupted = true;
+                    }
+                }
+                releasePending = running;
+            }
             // unlock append
             execFunc.signalAll();
+            if (onDispose != null) {
+                cancelDeferred(onDispose);
+            }
 
             logger.trace("AsyncProc.dispose()");
             try {
             	long execTime = System.currentTimeMillis() - startTime;
-            	ExecResult result = new ExecResult(execFunc.processedCnt.get(), execTime, exception);
+            	ExecResult result = new ExecResult(execFunc.processedCnt.get(), execTime, exception, metrics);
                 logger.trace(result.toString());
+                JfrEvents.processEnd(metrics, result, !finished);
 if (exception != null) exception.printStackTrace();
                 postFunc.execute(result);
             } catch (Exception e) {
                 logger.error("exception in postFunc. msg=[{}]", e.getMessage());
             }
+            if (!running) {
+                release(-1);
+            }
         }
     }
 
@@ -131,25 +316,158 @@ if (exception != null) exception.printStackTrace();
         return isDisposed.get();
     }
 
+    /**
+     **********************************
+     * get future completed when the process thread is released after dispose.
+     * @return future of the result with close latency
+     **********************************
+     */
+    CompletableFuture<ExecResult> released() {
+        return released;
+    }
+
+    // complete released future(first call only)
+    private void release(long closeLatency) {
+        if (!released.isDone()) {
+            long execTime = System.currentTimeMillis() - startTime;
+            released.complete(new ExecResult(execFunc.processedCnt.get(), execTime,
+                                                exception, metrics, closeLatency));
+        }
+    }
+
+    // clear runner after execute() returned
+    private void exitRunner() {
+        boolean pending;
+        long start;
+        synchronized (runnerLock) {
+            runner = null;
+            if (interrupted) {
+                // do not leak the interrupt to the pooled thread
+                Thread.interrupted();
+            }
+            pending = releasePending;
+            start = closeNanos;
+        }
+        if (pending) {
+            release(start != -1 ? System.nanoTime() - start : -1);
+        }
+    }
+
     @Override
     public final void subscribe(FlowableEmitter<T> emitter) throws Exception {
         this.emitter = emitter.serialize();
         this.emitter.setDisposable(this);
         startTime = System.currentTimeMillis();
+        metrics.start();
+        JfrEvents.processStart(metrics);
+        synchronized (runnerLock) {
+            runner = Thread.currentThread();
+        }
         try {
             execFunc.accept(this);
+            if (execFunc.spill != null) {
+                // delete the spill files on dispose
+                addOnDispose(execFunc.spill);
+            }
 
             // execute Process
             execFunc.execute();
 
-            this.emitter.onComplete();
+            if (!deferred) {
+                complete(null);
+            }
         } catch (Throwable t) {
-        	if (!emitter.isCancelled()) {
-        	    exception = t;
-        	}
-            if (!this.emitter.tryOnError(t)) {
-                logger.debug("AsyncProc cancelled.");
-        	}
+            complete(t);
+        } finally {
+            exitRunner();
+        }
+    }
+
+    /**
+     **********************************
+     * keep the stream open after execute() returned.
+     * <br>
+     * call in execute(). the process must call {@link #complete(Throwable)}
+     * when finished.
+     * @param cancellable called on dispose(e.g. cancel the scheduled task)
+     **********************************
+     */
+    void deferComplete(Cancellable cancellable) {
+        deferred = true;
+        addOnDispose(cancellable);
+    }
+
+    // chain the cancellable to the ones called on dispose
+    private void addOnDispose(final Cancellable cancellable) {
+        synchronized (runnerLock) {
+            final Cancellable prev = onDispose;
+            onDispose = prev == null ? cancellable : new Cancellable() {
+                @Override
+                public void cancel() throws Exception {
+                    try {
+                        cancellable.cancel();
+                    } finally {
+                        prev.cancel();
+                    }
+                }
+            };
+        }
+        if (isDisposed()) {
+            // disposed before registered
+            cancelDeferred(cancellable);
+        }
+    }
+
+    // cancel deferred process and complete the stream
+    private void cancelDeferred(Cancellable cancellable) {
+        if (cancellable != null) {
+            try {
+                cancellable.cancel();
+            } catch (Exception e) {
+                logger.warn("failed to cancel process. [{}]", e.toString());
+            }
+        }
+        completeStream(null);
+    }
+
+    /**
+     **********************************
+     * finish the process.
+     * <br>
+     * in spill mode, the stream is completed after the spilled values
+     * are emitted.
+     * @param t occurred exception. null if succeeded
+     **********************************
+     */
+    void complete(Throwable t) {
+        if (execFunc.spill != null && !isDisposed()) {
+            execFunc.finishSpill(t);
+        } else {
+            completeStream(t);
+        }
+    }
+
+    /**
+     **********************************
+     * complete the stream.(first call only)
+     * @param t occurred exception. null if succeeded
+     **********************************
+     */
+    private void completeStream(Throwable t) {
+        if (!isCompleted.compareAndSet(false, true)) {
+            return;
+        }
+        finished = true;
+        if (t == null || isDisposed()) {
+            // exception after dispose is caused by close(e.g. interrupted)
+            emitter.onComplete();
+            return;
+        }
+        if (!emitter.isCancelled()) {
+            exception = t;
+        }
+        if (!emitter.tryOnError(t)) {
+            logger.debug("AsyncProc cancelled.");
         }
     }
 
@@ -199,6 +517,161 @@ if (exception != null) exception.printStackTrace();
         return new ClosableResult<T>(this, bufSize, isDelayError);
     }
 
+    /**
+     **********************************
+     * execute process.
+     * @param scheduler scheduler for execute process and deliver results
+     * @return async process result
+     **********************************
+     */
+    public ClosableResult<T> run(Scheduler scheduler) {
+        return new ClosableResult<T>(this, ClosableResult.DEFAULT_BUF_SIZE, false, scheduler);
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * @param bufSize append buffer size
+     * @param isDelayError if true, the exception is delayed until all added data is read.
+     *                     if false, immediately raise an exception.
+     * @param scheduler scheduler for execute process and deliver results
+     * @return async process result
+     **********************************
+     */
+    public ClosableResult<T> run(int bufSize, boolean isDelayError, Scheduler scheduler) {
+        return new ClosableResult<T>(this, bufSize, isDelayError, scheduler);
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * @param options execute options
+     * @return async process result
+     **********************************
+     */
+    public ClosableResult<T> run(RunOptions options) {
+        return new ClosableResult<T>(this, options);
+    }
+
+    /**
+     **********************************
+     * execute process in push mode.
+     * <br>
+     * the process is executed on the calling thread, and append() calls the
+     * consumer directly. no buffer and no other thread are used.
+     * for cheap consumers(e.g. counters). if the process appends from
+     * multiple threads, the consumer must be thread safe.
+     * dispose() stops the process at its next append(). an exception in the
+     * consumer stops the process, and is set in the result.
+     * a deferred process(e.g. {@link AsyncIntervalProcess}) appends on its
+     * own threads, and this method blocks until the process is finished.
+     * <pre>
+     * {@code
+     * final LongAdder counter = new LongAdder();
+     * ExecResult result = proc.runPush(new Consumer<String>() {
+     *   public void accept(String value) {
+     *     counter.increment();
+     *   }
+     * });
+     * }
+     * </pre>
+     * @param consumer value consumer
+     * @return process result(also passed to the PostFunc)
+     **********************************
+     */
+    public ExecResult runPush(Consumer<? super T> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer can not null.");
+        }
+        pushConsumer = consumer;
+        Flowable.create(this, BackpressureStrategy.MISSING).subscribe(new FlowableSubscriber<T>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(T value) {
+                // values are pushed by append()
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // set in the result
+            }
+
+            @Override
+            public void onComplete() {
+                // do nothing.
+            }
+        });
+        // released when the process is finished(after execute() returned, if not deferred)
+        return released.join();
+    }
+
+    /**
+     **********************************
+     * get process as a flowable.
+     * @return flowable of the process
+     * @see #toFlowable(Scheduler)
+     **********************************
+     */
+    public Flowable<T> toFlowable() {
+        return toFlowable(AsyncExecutors.getDefaultScheduler());
+    }
+
+    /**
+     **********************************
+     * get process as a flowable.
+     * <br>
+     * the process is executed on subscribe, and append() blocks until the
+     * subscriber requests. values are emitted on the process thread without
+     * the result buffer of {@link ClosableResult}.
+     * cancelling the subscription disposes the process.
+     * the process can be subscribed only once.
+     * @param scheduler scheduler for execute process
+     * @return flowable of the process
+     **********************************
+     */
+    public Flowable<T> toFlowable(Scheduler scheduler) {
+        Flowable<T> f = source();
+        if (budget != null) {
+            // emitted values are not buffered
+            final ByteBudget b = budget;
+            f = f.doOnNext(new Consumer<T>() {
+                @Override
+                public void accept(T value) {
+                    b.release(value);
+                }
+            });
+        }
+        return f.subscribeOn(scheduler, false);
+    }
+
+    /**
+     **********************************
+     * get process as a reactive streams publisher.
+     * @return publisher of the process
+     * @see #toFlowable(Scheduler)
+     **********************************
+     */
+    public Publisher<T> toPublisher() {
+        return toFlowable();
+    }
+
+    /**
+     **********************************
+     * create source flowable.
+     * <br>
+     * ExecuteFunc never emits more than requested.
+     * @return source flowable(not subscribed on the scheduler)
+     **********************************
+     */
+    Flowable<T> source() {
+        return Flowable.create(this, BackpressureStrategy.MISSING)
+                        .doOnRequest(execFunc);
+    }
+
     /**
      ********************************************
      *
@@ -219,6 +692,25 @@ if (exception != null) exception.printStackTrace();
         /** processed item count */
         private final AtomicLong processedCnt = new AtomicLong(0);
 
+        /** flow control counters */
+        private FlowMetrics metrics;
+
+        /** byte budget(nullable) */
+        private ByteBudget budget;
+
+        /** spill buffer(nullable) */
+        private SpillBuffer<T> spill;
+
+        /** push mode consumer(nullable) */
+        private Consumer<? super T> push;
+        private final AtomicInteger wip = new AtomicInteger(0);
+        private final AtomicBoolean spillFinished = new AtomicBoolean(false);
+        private volatile boolean spillDone = false;
+        private volatile Throwable spillError = null;
+
+        /** true after first value emitted(set by any appending thread) */
+        private final AtomicBoolean emitted = new AtomicBoolean(false);
+
         private final AtomicLong requested = new AtomicLong(0);
         private final ReentrantLock lock = new ReentrantLock();
         private final Condition isRequested = lock.newCondition();
@@ -240,6 +732,11 @@ if (exception != null) exception.printStackTrace();
         final void accept(AsyncProc<T> proc) {
             this.parentProc = proc;
             this.emitter = proc.emitter;
+            this.budget = proc.budget;
+            this.push = proc.pushConsumer;
+            if (proc.spillSerializer != null && push == null) {
+                this.spill = new SpillBuffer<>(proc.spillSerializer, proc.spillDir, proc.spillSegmentBytes);
+            }
         }
 
         /**
@@ -249,8 +746,12 @@ if (exception != null) exception.printStackTrace();
          */
         @Override
         public final void accept(long request) {
-            requested.addAndGet(request);
+            BackpressureHelper.add(requested, request);
+            metrics.requested(request);
             signalAll();
+            if (spill != null) {
+                drainSpill();
+            }
         }
 
         /**
@@ -260,31 +761,272 @@ if (exception != null) exception.printStackTrace();
          **********************************
          */
         protected final void append(T value) {
-            if (requested.get() <= 0) {
-            	lock.lock();
-                try {
-                    //logger.trace("blocking append()");
-                    isRequested.await();
-                } catch (InterruptedException ie) {
-                    throw new RuntimeException(ie);
-                } finally {
-                    lock.unlock();
-                    //logger.trace("unblock append()");
+            if (push != null) {
+                pushValue(value);
+                return;
+            }
+            if (spill != null) {
+                spillAppend(value);
+                return;
+            }
+            if (budget != null) {
+                acquireBytes(value);
+            }
+            claim(1);
+            emitter.onNext(value);
+            processedCnt.incrementAndGet();
+        }
+
+        /**
+         **********************************
+         * emit values.
+         * <br>
+         * values are emitted in chunks as large as the current request allows,
+         * blocking only when no request remains.
+         * @param values values
+         **********************************
+         */
+        protected final void appendAll(Collection<? extends T> values) {
+            if (budget != null || spill != null || push != null) {
+                for (T value : values) {
+                    append(value);
+                }
+                return;
+            }
+            int remain = values.size();
+            Iterator<? extends T> it = values.iterator();
+            while (remain > 0) {
+                long n = claim(remain);
+                for (long i = 0; i < n; i++) {
+                    emitter.onNext(it.next());
+                }
+                remain -= n;
+                processedCnt.addAndGet(n);
+            }
+        }
+
+        /**
+         **********************************
+         * emit values.
+         * <br>
+         * values are emitted in chunks as large as the current request allows,
+         * blocking only when no request remains.
+         * @param values values
+         * @param off start offset in values
+         * @param len number of values to emit
+         **********************************
+         */
+        protected final void appendAll(T[] values, int off, int len) {
+            if (off < 0 || len < 0 || off > values.length - len) {
+                throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", length=" + values.length);
+            }
+            int end = off + len;
+            if (budget != null || spill != null || push != null) {
+                while (off < end) {
+                    append(values[off++]);
+                }
+                return;
+            }
+            while (off < end) {
+                long n = claim(end - off);
+                for (int i = 0; i < n; i++) {
+                    emitter.onNext(values[off++]);
                 }
+                processedCnt.addAndGet(n);
             }
+        }
 
+        /**
+         **********************************
+         * take up to max requested count, blocking while no request remains.
+         * @param max max count
+         * @return claimed count(1 or more)
+         **********************************
+         */
+        private long claim(long max) {
+            for (;;) {
+                long r = requested.get();
+                if (r <= 0) {
+                    long waitStart = System.nanoTime();
+                    Object jfrEvent = JfrEvents.beginProducerBlocked();
+                    lock.lock();
+                    try {
+                        //logger.trace("blocking append()");
+                        while (requested.get() <= 0 && !parentProc.isDisposed()) {
+                            isRequested.await();
+                        }
+                    } catch (InterruptedException ie) {
+                        throw new RuntimeException(ie);
+                    } finally {
+                        lock.unlock();
+                        metrics.producerBlocked(System.nanoTime() - waitStart);
+                        JfrEvents.producerBlocked(jfrEvent, metrics);
+                        //logger.trace("unblock append()");
+                    }
+                }
+
+                if (parentProc.isDisposed()) {
+                    emitter.onComplete();
+                    logger.trace("interrupt append(). [process disposed]");
+                    throw new IllegalStateException("process disposed.");
+                }
+                if (r <= 0) {
+                    continue;
+                }
+                firstElement();
+                if (r == Long.MAX_VALUE) {
+                    return max;
+                }
+                long n = Math.min(r, max);
+                if (requested.compareAndSet(r, r - n)) {
+                    return n;
+                }
+            }
+        }
+
+        // record the first value once
+        private void firstElement() {
+            if (!emitted.get() && emitted.compareAndSet(false, true)) {
+                metrics.firstElement();
+            }
+        }
+
+        // call push consumer on the process thread
+        private void pushValue(T value) {
             if (parentProc.isDisposed()) {
-                emitter.onComplete();
                 logger.trace("interrupt append(). [process disposed]");
                 throw new IllegalStateException("process disposed.");
             }
-            emitter.onNext(value);
-            requested.decrementAndGet();
+            firstElement();
+            try {
+                push.accept(value);
+            } catch (Exception e) {
+                throw ExceptionHelper.wrapOrThrow(e);
+            }
+            processedCnt.incrementAndGet();
+        }
+
+        /**
+         **********************************
+         * emit the value, or spill it if not requested(never blocks).
+         * <br>
+         * values are emitted directly only while nothing is spilled,
+         * and only by the thread that owns the drain.
+         **********************************
+         */
+        private void spillAppend(T value) {
+            if (parentProc.isDisposed()) {
+                logger.trace("interrupt append(). [process disposed]");
+                throw new IllegalStateException("process disposed.");
+            }
+            firstElement();
             processedCnt.incrementAndGet();
+            if (wip.get() == 0 && wip.compareAndSet(0, 1)) {
+                if (spill.isEmpty() && takeRequest()) {
+                    emitter.onNext(value);
+                } else {
+                    spill.write(value);
+                    emitSpilled();
+                }
+                if (wip.decrementAndGet() == 0) {
+                    return;
+                }
+            } else {
+                spill.write(value);
+                if (wip.getAndIncrement() != 0) {
+                    return;
+                }
+            }
+            drainLoop();
+        }
+
+        /**
+         **********************************
+         * finish spill mode process(internal use only).
+         * @param t exception in the process. null if succeeded
+         **********************************
+         */
+        final void finishSpill(Throwable t) {
+            if (!spillFinished.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                spill.finish();
+            } catch (RuntimeException e) {
+                if (t == null) {
+                    t = e;
+                }
+            }
+            spillError = t;
+            spillDone = true;
+            drainSpill();
+        }
+
+        private void drainSpill() {
+            if (wip.getAndIncrement() == 0) {
+                drainLoop();
+            }
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            for (;;) {
+                emitSpilled();
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        // emit spilled values as requested(drain owner only)
+        private void emitSpilled() {
+            try {
+                while (!parentProc.isDisposed() && !spill.isEmpty() && requested.get() > 0) {
+                    T value = spill.poll();
+                    if (value == null) {
+                        // not flushed yet
+                        return;
+                    }
+                    takeRequest();
+                    emitter.onNext(value);
+                }
+            } catch (RuntimeException e) {
+                parentProc.completeStream(e);
+                return;
+            }
+            if (spillDone && spill.isEmpty()) {
+                parentProc.completeStream(spillError);
+            }
+        }
+
+        // decrement request(drain owner only)
+        private boolean takeRequest() {
+            for (;;) {
+                long r = requested.get();
+                if (r <= 0) {
+                    return false;
+                }
+                if (r == Long.MAX_VALUE || requested.compareAndSet(r, r - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        // wait for the byte budget
+        private void acquireBytes(T value) {
+            if (!budget.acquire(budget.weigh(value), parentProc, metrics)) {
+                emitter.onComplete();
+                logger.trace("interrupt append(). [process disposed]");
+                throw new IllegalStateException("process disposed.");
+            }
         }
 
         // unblock append()
         private final void signalAll() {
+            if (budget != null) {
+                budget.signal();
+            }
             lock.lock();
             try {
                 isRequested.signalAll();
@@ -16,12 +16,20 @@
 package info.bunji.asyncutil;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
 
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
+import info.bunji.asyncutil.functions.FlowMetricsListener;
 import info.bunji.asyncutil.functions.PostFunc;
+import info.bunji.asyncutil.functions.Serializer;
+import info.bunji.asyncutil.functions.Weigher;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Consumer;
 
 /**
  ************************************************
@@ -39,12 +47,20 @@ public abstract class AsyncProcess<T> {
     private final AsyncProc<T> internalProc;
     /** invoke append method */
     private static Method appendMethod;
+    /** invoke appendAll method */
+    private static Method appendAllMethod;
+    /** invoke appendAll method(array) */
+    private static Method appendArrayMethod;
 
     static {
         try {
             // get append method
             appendMethod = ExecuteFunc.class.getDeclaredMethod("append", Object.class);
             appendMethod.setAccessible(true);
+            appendAllMethod = ExecuteFunc.class.getDeclaredMethod("appendAll", Collection.class);
+            appendAllMethod.setAccessible(true);
+            appendArrayMethod = ExecuteFunc.class.getDeclaredMethod("appendAll", Object[].class, int.class, int.class);
+            appendArrayMethod.setAccessible(true);
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
@@ -75,6 +91,7 @@ public abstract class AsyncProcess<T> {
 
         // convert AsyncProc instance
         internalProc = new AsyncProc<T>().setExecFunc(execFunc).setPostFunc(postFunc);
+        internalProc.getMetrics().setProcess(getClass().getName(), System.identityHashCode(internalProc));
     }
 
     /**
@@ -87,6 +104,45 @@ public abstract class AsyncProcess<T> {
         return internalProc;
     }
 
+    /**
+     **********************************
+     * set flow control event listener.
+     * @param listener listener. if null, remove listener
+     * @return this instance
+     **********************************
+     */
+    public final AsyncProcess<T> setMetricsListener(FlowMetricsListener listener) {
+        internalProc.setMetricsListener(listener);
+        return this;
+    }
+
+    /**
+     **********************************
+     * bound the buffered values by bytes.
+     * @param weigher element size calculator. if null, remove the bound
+     * @param maxBytes max buffered bytes
+     * @return this instance
+     * @see AsyncProc#setWeigher(Weigher, long)
+     **********************************
+     */
+    public final AsyncProcess<T> setWeigher(Weigher<? super T> weigher, long maxBytes) {
+        internalProc.setWeigher(weigher, maxBytes);
+        return this;
+    }
+
+    /**
+     **********************************
+     * spill values to files while the consumer is not requesting.
+     * @param serializer value serializer. if null, disable spill
+     * @return this instance
+     * @see AsyncProc#setSpill(Serializer)
+     **********************************
+     */
+    public final AsyncProcess<T> setSpill(Serializer<T> serializer) {
+        internalProc.setSpill(serializer);
+        return this;
+    }
+
     /**
      **********************************
      * execute process impl.
@@ -109,6 +165,36 @@ public abstract class AsyncProcess<T> {
         }
     }
 
+    /**
+     **********************************
+     * emit values to async process.
+     * @param values process result values
+     **********************************
+     */
+    protected final void appendAll(Collection<? extends T> values) {
+        try {
+            appendAllMethod.invoke(internalProc.getExecFunc(), values);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     **********************************
+     * emit values to async process.
+     * @param values process result values
+     * @param off start offset in values
+     * @param len number of values to emit
+     **********************************
+     */
+    protected final void appendAll(T[] values, int off, int len) {
+        try {
+            appendArrayMethod.invoke(internalProc.getExecFunc(), values, off, len);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      **********************************
      * call execute finish.
@@ -164,4 +250,86 @@ public abstract class AsyncProcess<T> {
     public final ClosableResult<T> run(int bufSize, boolean isDelayError) {
         return new ClosableResult<T>(internalProc, bufSize, isDelayError);
     }
+
+    /**
+     **********************************
+     * execute process.
+     * @param scheduler scheduler for execute process and deliver results
+     * @return async process result
+     **********************************
+     */
+    public final ClosableResult<T> run(Scheduler scheduler) {
+        return new ClosableResult<T>(internalProc, ClosableResult.DEFAULT_BUF_SIZE, false, scheduler);
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * @param bufSize append buffer size
+     * @param isDelayError if true, the exception is delayed until all added data is read.
+     *                     if false, immediately raise an exception.
+     * @param scheduler scheduler for execute process and deliver results
+     * @return async process result
+     **********************************
+     */
+    public final ClosableResult<T> run(int bufSize, boolean isDelayError, Scheduler scheduler) {
+        return new ClosableResult<T>(internalProc, bufSize, isDelayError, scheduler);
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * @param options execute options
+     * @return async process result
+     **********************************
+     */
+    public final ClosableResult<T> run(RunOptions options) {
+        return new ClosableResult<T>(internalProc, options);
+    }
+
+    /**
+     **********************************
+     * execute process in push mode.
+     * @param consumer value consumer
+     * @return process result
+     * @see AsyncProc#runPush(Consumer)
+     **********************************
+     */
+    public final ExecResult runPush(Consumer<? super T> consumer) {
+        return internalProc.runPush(consumer);
+    }
+
+    /**
+     **********************************
+     * get process as a flowable.
+     * @return flowable of the process
+     * @see AsyncProc#toFlowable(Scheduler)
+     **********************************
+     */
+    public final Flowable<T> toFlowable() {
+        return internalProc.toFlowable();
+    }
+
+    /**
+     **********************************
+     * get process as a flowable.
+     * @param scheduler scheduler for execute process
+     * @return flowable of the process
+     * @see AsyncProc#toFlowable(Scheduler)
+     **********************************
+     */
+    public final Flowable<T> toFlowable(Scheduler scheduler) {
+        return internalProc.toFlowable(scheduler);
+    }
+
+    /**
+     **********************************
+     * get process as a reactive streams publisher.
+     * @return publisher of the process
+     * @see AsyncProc#toFlowable(Scheduler)
+     **********************************
+     */
+    public final Publisher<T> toPublisher() {
+        return internalProc.toPublisher();
+    }
 }
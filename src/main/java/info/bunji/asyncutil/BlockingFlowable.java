@@ -15,14 +15,13 @@
  */
 package info.bunji.asyncutil;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 
 import org.reactivestreams.Subscription;
 
@@ -52,7 +51,50 @@ final class BlockingFlowable<T> implements Iterable<T> {
      **********************************
      */
     BlockingFlowable(Flowable<T> source, int bufSize, boolean isDelayError) {
-        iterator = new IteratorSubscriber<>(bufSize, isDelayError);
+        this(source, bufSize, isDelayError, null);
+    }
+
+    /**
+     **********************************
+     * @param source flowable instance
+     * @param bufSize buffeer size
+     * @param isDelayError if true, the exception is delayed until all added data is read.
+     *                     if false, immediately raise an exception.
+     * @param metrics flow control counters(nullable)
+     **********************************
+     */
+    BlockingFlowable(Flowable<T> source, int bufSize, boolean isDelayError, FlowMetrics metrics) {
+        this(source, bufSize, isDelayError, metrics, null);
+    }
+
+    /**
+     **********************************
+     * @param source flowable instance
+     * @param bufSize buffeer size(initial size if sizer is not null)
+     * @param isDelayError if true, the exception is delayed until all added data is read.
+     *                     if false, immediately raise an exception.
+     * @param metrics flow control counters(nullable)
+     * @param sizer adaptive window calculator. if null, use fixed bufSize
+     **********************************
+     */
+    BlockingFlowable(Flowable<T> source, int bufSize, boolean isDelayError, FlowMetrics metrics, BufferSizer sizer) {
+        this(source, bufSize, isDelayError, metrics, sizer, null);
+    }
+
+    /**
+     **********************************
+     * @param source flowable instance
+     * @param bufSize buffeer size(initial size if sizer is not null)
+     * @param isDelayError if true, the exception is delayed until all added data is read.
+     *                     if false, immediately raise an exception.
+     * @param metrics flow control counters(nullable)
+     * @param sizer adaptive window calculator. if null, use fixed bufSize
+     * @param budget byte budget released on read(nullable)
+     **********************************
+     */
+    BlockingFlowable(Flowable<T> source, int bufSize, boolean isDelayError, FlowMetrics metrics,
+                                                    BufferSizer sizer, ByteBudget budget) {
+        iterator = new IteratorSubscriber<>(bufSize, isDelayError, metrics, sizer, budget);
         source.subscribe(iterator);
     }
 
@@ -61,9 +103,87 @@ final class BlockingFlowable<T> implements Iterable<T> {
         return iterator;
     }
 
+    /**
+     **********************************
+     * cancel upstream subscription.
+     * <br>
+     * may be called from any thread. a consumer waiting in hasNext()
+     * returns false, and unread values are discarded.
+     **********************************
+     */
+    void cancel() {
+        iterator.cancel();
+    }
+
+    /**
+     **********************************
+     * consume the remaining values without blocking.
+     * <br>
+     * the listener is called on the thread that delivers the values
+     * (or on the calling thread for already buffered values), one call
+     * at a time. no thread waits for the values.
+     * the iterator must not be used after this call.
+     * @param listener value listener
+     **********************************
+     */
+    void drainTo(Listener<T> listener) {
+        iterator.drainTo(listener);
+    }
+
+    /**
+     ****************************************
+     * non-blocking value listener.
+     * @param <T> element type
+     ****************************************
+     */
+    interface Listener<T> {
+        /**
+         * called for each value.
+         * @param value value
+         * @throws Exception stops the drain, and passed to onDone()
+         */
+        void onNext(T value) throws Exception;
+
+        /**
+         * called once after the last value, or when cancelled.
+         * @param error exception. null if completed or cancelled
+         */
+        void onDone(Throwable error);
+    }
+
+    /**
+     **********************************
+     * get next batch(blocking).
+     * @param maxSize max batch size
+     * @param maxWaitNanos max wait time(ns) for filling the batch after the first value
+     * @return batch. null if no more values
+     **********************************
+     */
+    List<T> nextBatch(int maxSize, long maxWaitNanos) {
+        return iterator.nextBatch(maxSize, maxWaitNanos);
+    }
+
+    /**
+     **********************************
+     * get current buffer window.
+     * @return window size
+     **********************************
+     */
+    int getWindow() {
+        return iterator.window;
+    }
+
     /**
      ****************************************
      * blocking iterator class.
+     * <br>
+     * received values are kept in a preallocated single-producer/single-consumer
+     * ring buffer. the consumer thread is parked only while the buffer is empty.
+     * <p>
+     * in adaptive mode the consumer resizes the request window, and the
+     * producer moves to a new ring of the requested capacity on its next
+     * value. the consumer follows the link when it reaches the start index
+     * of the new ring, and the old ring is released.
      * @param <T> element type
      ****************************************
      */
@@ -71,12 +191,41 @@ final class BlockingFlowable<T> implements Iterable<T> {
                                     extends AtomicReference<Subscription>
                                     implements FlowableSubscriber<T>, Iterator<T> {
 
-        private final BlockingQueue<T> queue;
+        private static final long serialVersionUID = 1L;
+
+        /** ring array(consumer side) */
+        private Object[] buffer;
+        private int mask;
+        private Ring ring;
+        /** current ring(producer side, adaptive only) */
+        private Ring pRing;
+        /** ring capacity requested by the consumer */
+        private volatile int capacity;
         private final long limit;
-        private final Lock lock;
-        private final Condition condition;
         private volatile boolean done;
+        /** true if cancelled by cancel() */
+        private volatile boolean cancelled;
         private final boolean delayError;
+        /** next write index(written by producer only) */
+        private volatile long producerIndex;
+        /** next read index(written by consumer only) */
+        private volatile long consumerIndex;
+        /** parked consumer thread */
+        private volatile Thread waiter;
+        /** non-blocking consumer(null while iterated) */
+        private volatile Listener<T> listener;
+        /** drain guard of the listener */
+        private final AtomicInteger wip = new AtomicInteger(0);
+        /** flow control counters(nullable) */
+        private final FlowMetrics metrics;
+        /** adaptive window calculator(null if fixed) */
+        private final BufferSizer sizer;
+        /** byte budget(nullable) */
+        private final ByteBudget budget;
+        /** current request window */
+        volatile int window;
+        /** total requested count(adaptive only) */
+        private long requested;
         Throwable error;
         long produced;
         long bufSize;
@@ -86,62 +235,297 @@ final class BlockingFlowable<T> implements Iterable<T> {
          * @param bufSize buffeer size
          * @param isDelayError if true, the exception is delayed until all added data is read.
          *                     if false, immediately raise an exception.
+         * @param metrics flow control counters(nullable)
+         * @param sizer adaptive window calculator(nullable)
+         * @param budget byte budget(nullable)
          **********************************
          */
-        IteratorSubscriber(int bufSize, boolean delayError) {
-            this.queue = new LinkedBlockingQueue<>(bufSize);
+        IteratorSubscriber(int bufSize, boolean delayError, FlowMetrics metrics, BufferSizer sizer, ByteBudget budget) {
+            if (sizer != null) {
+                bufSize = sizer.getWindow();
+            }
+            int capacity = roundToPowerOfTwo(bufSize);
+            this.ring = new Ring(new Object[capacity], 0L);
+            this.buffer = ring.array;
+            this.mask = capacity - 1;
+            this.pRing = ring;
+            this.capacity = capacity;
             this.bufSize = bufSize;
+            this.window = bufSize;
             this.limit = bufSize - (bufSize >> 2);
             this.delayError = delayError;
-            this.lock = new ReentrantLock();
-            this.condition = lock.newCondition();
+            this.metrics = metrics;
+            this.sizer = sizer;
+            this.budget = budget;
+        }
+
+        private static int roundToPowerOfTwo(int value) {
+            return 1 << (32 - Integer.numberOfLeadingZeros(Math.max(value, 1) - 1));
         }
 
         @Override
         public boolean hasNext() {
             for (;;) {
+                if (cancelled) {
+                    clear();
+                    return false;
+                }
                 boolean d = done;
-                boolean isEmpty = queue.isEmpty();
-
-                if (!d && isEmpty) {
-                    lock.lock();
-                    try {
-                        while (!done && queue.isEmpty()) {
-                            condition.await();
-                        }
-                    } catch (InterruptedException ie) {
-                        get().cancel();
-                        throw ExceptionHelper.wrapOrThrow(ie);	// internal method
-                    } finally {
-                        lock.unlock();
-                    }
-                } else {
-                    if (d && isEmpty) {
-                        Throwable e = error;
-                        if (e != null) {
-                            throw ExceptionHelper.wrapOrThrow(e);
-                        }
-                        return false;
+                boolean isEmpty = isEmpty();
+
+                if (d && (isEmpty || (!delayError && error != null))) {
+                    Throwable e = error;
+                    if (e != null) {
+                        // clear unread values
+                        clear();
+                        throw ExceptionHelper.wrapOrThrow(e);
                     }
+                    return false;
+                }
+                if (!isEmpty) {
                     return true;
                 }
+
+                // wait for producer
+                waiter = Thread.currentThread();
+                if (!done && isEmpty()) {
+                    Object jfrEvent = JfrEvents.beginConsumerBlocked();
+                    if (metrics != null) {
+                        long waitStart = System.nanoTime();
+                        LockSupport.park(this);
+                        metrics.consumerBlocked(System.nanoTime() - waitStart);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                    JfrEvents.consumerBlocked(jfrEvent, metrics);
+                    if (sizer != null) {
+                        // shrink idle stream
+                        adjust();
+                    }
+                }
+                waiter = null;
+                if (Thread.interrupted()) {
+                    SubscriptionHelper.cancel(this);
+                    throw ExceptionHelper.wrapOrThrow(new InterruptedException());
+                }
             }
         }
 
         @Override
         public T next() {
             if (hasNext()) {
-                T value = queue.poll();
-                long p = produced + 1;
-                if (p == limit) {
-                    produced = 0;
-                    get().request(p);
-                } else {
-                    produced = p;
+                return take();
+            }
+            throw new NoSuchElementException();
+        }
+
+        // take a buffered value and request more(consumer side only)
+        private T take() {
+            long c = consumerIndex;
+            T value = poll(c);
+            consumerIndex = c + 1;
+
+            if (sizer != null) {
+                if (requested - (c + 1) <= (window >> 2)) {
+                    replenish();
                 }
                 return value;
             }
-            throw new NoSuchElementException();
+            long p = produced + 1;
+            if (p == limit) {
+                produced = 0;
+                get().request(p);
+            } else {
+                produced = p;
+            }
+            return value;
+        }
+
+        void drainTo(Listener<T> l) {
+            listener = l;
+            // buffered values and signals before the listener was set
+            drainListener();
+        }
+
+        // drain to the listener(one thread at a time)
+        private void drainListener() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                if (!emitListener()) {
+                    // terminated. wip is never released
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        // return false after onDone() was called
+        private boolean emitListener() {
+            Listener<T> l = listener;
+            for (;;) {
+                if (cancelled) {
+                    clear();
+                    l.onDone(null);
+                    return false;
+                }
+                boolean d = done;
+                boolean isEmpty = isEmpty();
+                if (d && (isEmpty || (!delayError && error != null))) {
+                    Throwable e = error;
+                    if (e != null) {
+                        clear();
+                    }
+                    l.onDone(e);
+                    return false;
+                }
+                if (isEmpty) {
+                    return true;
+                }
+                try {
+                    l.onNext(take());
+                } catch (Throwable t) {
+                    l.onDone(t);
+                    return false;
+                }
+            }
+        }
+
+        /**
+         **********************************
+         * wait for the first value, then drain up to maxSize values.
+         * <br>
+         * if the buffer runs out before maxSize, wait for more values
+         * until maxWaitNanos has passed since the first value.
+         * upstream is requested at most once per drain.
+         **********************************
+         */
+        List<T> nextBatch(int maxSize, long maxWaitNanos) {
+            if (!hasNext()) {
+                return null;
+            }
+            List<T> batch = new ArrayList<>(Math.min(maxSize, buffer.length));
+            long deadline = System.nanoTime() + maxWaitNanos;
+            for (;;) {
+                drain(batch, maxSize);
+                if (batch.size() >= maxSize || cancelled) {
+                    return batch;
+                }
+
+                if (done) {
+                    if (!delayError && error != null) {
+                        clear();
+                        throw ExceptionHelper.wrapOrThrow(error);
+                    }
+                    if (isEmpty()) {
+                        // error(if any) is thrown on next call
+                        return batch;
+                    }
+                    continue;
+                }
+
+                long remain = deadline - System.nanoTime();
+                if (remain <= 0) {
+                    return batch;
+                }
+
+                // wait for producer
+                waiter = Thread.currentThread();
+                if (!done && isEmpty()) {
+                    Object jfrEvent = JfrEvents.beginConsumerBlocked();
+                    if (metrics != null) {
+                        long waitStart = System.nanoTime();
+                        LockSupport.parkNanos(this, remain);
+                        metrics.consumerBlocked(System.nanoTime() - waitStart);
+                    } else {
+                        LockSupport.parkNanos(this, remain);
+                    }
+                    JfrEvents.consumerBlocked(jfrEvent, metrics);
+                }
+                waiter = null;
+                if (Thread.interrupted()) {
+                    SubscriptionHelper.cancel(this);
+                    throw ExceptionHelper.wrapOrThrow(new InterruptedException());
+                }
+            }
+        }
+
+        // consumer side only
+        private void drain(List<T> batch, int maxSize) {
+            long c = consumerIndex;
+            int n = (int) Math.min(producerIndex - c, maxSize - batch.size());
+            for (int i = 0; i < n; i++) {
+                batch.add(poll(c));
+                c++;
+            }
+            consumerIndex = c;
+
+            if (sizer != null) {
+                if (requested - c <= (window >> 2)) {
+                    replenish();
+                }
+                return;
+            }
+            long p = produced + n;
+            if (p >= limit) {
+                produced = 0;
+                get().request(p);
+            } else {
+                produced = p;
+            }
+        }
+
+        // consumer side only
+        @SuppressWarnings("unchecked")
+        private T poll(long c) {
+            if (sizer != null) {
+                Ring next = ring.next;
+                if (next != null && next.start == c) {
+                    // ring resized by producer
+                    ring = next;
+                    buffer = next.array;
+                    mask = buffer.length - 1;
+                }
+            }
+            int offset = (int) c & mask;
+            Object v = buffer[offset];
+            buffer[offset] = null;
+            if (budget != null) {
+                budget.release(v);
+            }
+            return (T) v;
+        }
+
+        /**
+         **********************************
+         * update window and ring capacity(adaptive only).
+         * <br>
+         * the capacity never gets smaller than the outstanding request.
+         **********************************
+         */
+        private void adjust() {
+            long c = consumerIndex;
+            int w = sizer.update(c, producerIndex, System.nanoTime());
+            int cap = roundToPowerOfTwo((int) Math.max(w, requested - c));
+            if (cap != capacity) {
+                capacity = cap;
+            }
+            window = w;
+        }
+
+        // request up to window(adaptive only)
+        private void replenish() {
+            adjust();
+            long n = consumerIndex + window - requested;
+            if (n > 0) {
+                requested += n;
+                get().request(n);
+            }
         }
 
         @Override
@@ -149,23 +533,66 @@ final class BlockingFlowable<T> implements Iterable<T> {
             throw new UnsupportedOperationException("remove");
         }
 
+        private boolean isEmpty() {
+            return producerIndex == consumerIndex;
+        }
+
+        // consumer side only
+        private void clear() {
+            long c = consumerIndex;
+            long p = producerIndex;
+            while (c != p) {
+                poll(c);
+                c++;
+            }
+            consumerIndex = c;
+        }
+
+        // cancel from any thread
+        void cancel() {
+            cancelled = true;
+            SubscriptionHelper.cancel(this);
+            done = true;
+            signalConsumer();
+        }
+
         void signalConsumer() {
-            lock.lock();
-            try {
-                condition.signalAll();
-            } finally {
-                lock.unlock();
+            if (listener != null) {
+                drainListener();
+                return;
+            }
+            Thread w = waiter;
+            if (w != null) {
+                LockSupport.unpark(w);
             }
         }
 
         @Override
         public void onNext(T t) {
-            if (!queue.offer(t)) {
+            long p = producerIndex;
+            long c = consumerIndex;
+            Object[] b = pRing.array;
+            if (sizer != null) {
+                int cap = capacity;
+                if (p - c < cap && cap != b.length) {
+                    // move to the resized ring
+                    Ring next = new Ring(new Object[cap], p);
+                    pRing.next = next;
+                    pRing = next;
+                    b = next.array;
+                }
+            }
+            if (p - c >= b.length) {
                 SubscriptionHelper.cancel(this);
                 // FIXME
                 onError(new MissingBackpressureException("queue is full?!"));
-            } else {
-                signalConsumer();
+                return;
+            }
+            b[(int) p & (b.length - 1)] = t;
+            producerIndex = p + 1;
+            signalConsumer();
+            if (metrics != null) {
+                metrics.buffered(p + 1 - c);
             }
         }
 
@@ -173,10 +600,6 @@ final class BlockingFlowable<T> implements Iterable<T> {
         public void onError(Throwable t) {
             error = t;
             done = true;
-            if (!delayError) {
-                // clear unread values
-                queue.clear();
-            }
             signalConsumer();
         }
 
@@ -190,7 +613,25 @@ final class BlockingFlowable<T> implements Iterable<T> {
         public void onSubscribe(Subscription s) {
             //logger.trace("call onSubscribe()");
             set(s);
+            requested = bufSize;
             s.request(bufSize);
         }
     }
+
+    /**
+     ****************************************
+     * ring array and the link to the resized ring.
+     ****************************************
+     */
+    private static final class Ring {
+        final Object[] array;
+        /** index of the first value in this ring */
+        final long start;
+        volatile Ring next;
+
+        Ring(Object[] array, long start) {
+            this.array = array;
+            this.start = start;
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ ************************************************
+ * adaptive buffer window calculator.
+ * <br>
+ * the window is sized to hold about SPAN_NANOS worth of values at the
+ * measured rate(the faster of producer and consumer). it doubles while the
+ * target is larger, and halves when the target falls below a quarter of it.
+ * not thread safe. used by the consumer thread only.
+ * @author f.kinoshita
+ ************************************************
+ */
+final class BufferSizer {
+
+    /** buffered time span to aim for */
+    static final long SPAN_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /** min sampling period */
+    static final long SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private int window;
+
+    private long lastTime;
+
+    private long lastConsumed = 0;
+
+    private long lastProduced = 0;
+
+    /**
+     **********************************
+     * @param initSize initial window size(clamped to min and max)
+     * @param minSize min window size
+     * @param maxSize max window size
+     * @param now current time(ns)
+     **********************************
+     */
+    BufferSizer(int initSize, int minSize, int maxSize, long now) {
+        if (minSize <= 0) {
+            throw new IllegalArgumentException("minBufSize is greater than 0.");
+        }
+        if (maxSize < minSize) {
+            throw new IllegalArgumentException("maxBufSize is minBufSize or greater.");
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.window = Math.max(minSize, Math.min(maxSize, initSize));
+        this.lastTime = now;
+    }
+
+    int getWindow() {
+        return window;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     **********************************
+     * update the window from the counters.
+     * @param consumed total consumed count
+     * @param produced total produced count
+     * @param now current time(ns)
+     * @return new window size
+     **********************************
+     */
+    int update(long consumed, long produced, long now) {
+        long elapsed = now - lastTime;
+        if (elapsed < SAMPLE_NANOS) {
+            return window;
+        }
+        long count = Math.max(consumed - lastConsumed, produced - lastProduced);
+        double target = (double) count * SPAN_NANOS / elapsed;
+        if (target > window) {
+            window = (int) Math.min(maxSize, (long) window << 1);
+        } else if (target < window >> 2) {
+            window = Math.max(minSize, window >> 1);
+        }
+        lastTime = now;
+        lastConsumed = consumed;
+        lastProduced = produced;
+        return window;
+    }
+}
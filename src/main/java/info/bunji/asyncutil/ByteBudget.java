@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import info.bunji.asyncutil.functions.Weigher;
+import io.reactivex.disposables.Disposable;
+
+/**
+ ************************************************
+ * byte budget of the buffered values.
+ * <br>
+ * the appending threads acquire the weight of a value before it is emitted,
+ * and the consumer thread releases it when the value is read.
+ * a value larger than the budget is accepted while nothing is buffered.
+ * @author f.kinoshita
+ ************************************************
+ */
+final class ByteBudget {
+
+    private final Weigher<Object> weigher;
+
+    private final long maxBytes;
+
+    private final AtomicLong bytes = new AtomicLong(0);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    /** count of the threads waiting in acquire() */
+    private final AtomicInteger waiters = new AtomicInteger(0);
+
+    /**
+     **********************************
+     * @param weigher element size calculator
+     * @param maxBytes max buffered bytes
+     **********************************
+     */
+    @SuppressWarnings("unchecked")
+    ByteBudget(Weigher<?> weigher, long maxBytes) {
+        if (weigher == null) {
+            throw new IllegalArgumentException("weigher can not null.");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes is greater than 0.");
+        }
+        this.weigher = (Weigher<Object>) weigher;
+        this.maxBytes = maxBytes;
+    }
+
+    long weigh(Object value) {
+        long w = weigher.weigh(value);
+        if (w < 0) {
+            throw new IllegalStateException("negative weight. [" + w + "]");
+        }
+        return w;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    long getBufferedBytes() {
+        return bytes.get();
+    }
+
+    private boolean tryAcquire(long weight) {
+        for (;;) {
+            long b = bytes.get();
+            if (b > 0 && b + weight > maxBytes) {
+                return false;
+            }
+            if (bytes.compareAndSet(b, b + weight)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     **********************************
+     * wait until the weight fits in the budget(appending thread).
+     * @param weight value weight
+     * @param proc parent process. stop waiting if disposed
+     * @param metrics flow control counters
+     * @return true if acquired, false if disposed
+     **********************************
+     */
+    boolean acquire(long weight, Disposable proc, FlowMetrics metrics) {
+        if (tryAcquire(weight)) {
+            return true;
+        }
+        long waitStart = System.nanoTime();
+        Object jfrEvent = JfrEvents.beginProducerBlocked();
+        lock.lock();
+        // count before the retry, so a release after it always signals
+        waiters.incrementAndGet();
+        try {
+            while (!tryAcquire(weight)) {
+                if (proc.isDisposed()) {
+                    return false;
+                }
+                released.await();
+            }
+            return true;
+        } catch (InterruptedException ie) {
+            throw new RuntimeException(ie);
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+            metrics.producerBlocked(System.nanoTime() - waitStart);
+            JfrEvents.producerBlocked(jfrEvent, metrics);
+        }
+    }
+
+    /**
+     **********************************
+     * release the weight of a read value(consumer thread).
+     * @param value read value
+     **********************************
+     */
+    void release(Object value) {
+        long w = weigher.weigh(value);
+        if (w > 0) {
+            bytes.addAndGet(-w);
+            if (waiters.get() > 0) {
+                signal();
+            }
+        }
+    }
+
+    // unblock acquire()
+    void signal() {
+        lock.lock();
+        try {
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
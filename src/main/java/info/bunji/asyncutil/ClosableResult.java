@@ -17,9 +17,17 @@ package info.bunji.asyncutil;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,8 +36,10 @@ import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
 import info.bunji.asyncutil.functions.PostFunc;
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.BiFunction;
 import io.reactivex.functions.Consumer;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.functions.Function;
 
 /**
  ************************************************
@@ -58,12 +68,33 @@ public final class ClosableResult<T> implements Iterable<T>, Closeable {
     /** execute process */
     private final AsyncProc<T> asyncProc;
 
+    private final BlockingFlowable<T> blocking;
+
     private final Iterator<T> iterator;
 
+    /** flow control counters(nullable) */
+    private final FlowMetrics metrics;
+
     private volatile boolean isClosed = false;
 
+    /** mode used by close() */
+    private final CloseMode closeMode;
+
+    /** scheduler for async terminal operations */
+    private final Scheduler scheduler;
+
+    /** completed when the process is released */
+    private volatile CompletableFuture<ExecResult> closeFuture = null;
+
     protected static final int DEFAULT_BUF_SIZE = 4096;
 
+    private final Consumer<Throwable> errorLogger = new Consumer<Throwable>() {
+        @Override
+        public void accept(Throwable t) throws Exception {
+            logger.error("error occurred now. [{}]", t.toString());
+        }
+    };
+
     /**
      **********************************
      * @param proc execute AsyncProcess instance
@@ -148,24 +179,82 @@ public final class ClosableResult<T> implements Iterable<T>, Closeable {
      *                     if false, immediately raise an exception.
      **********************************
      */
-	public ClosableResult(AsyncProc<T> asyncProc, int bufSize, boolean isDelayError) {
+    public ClosableResult(AsyncProc<T> asyncProc, int bufSize, boolean isDelayError) {
+        this(asyncProc, bufSize, isDelayError, AsyncExecutors.getDefaultScheduler());
+    }
+
+    /**
+     **********************************
+     * @param asyncProc execute AsyncProc instance
+     * @param bufSize append buffer size
+     * @param isDelayError if true, the exception is delayed until all added data is read.
+     *                     if false, immediately raise an exception.
+     * @param scheduler scheduler for execute process and deliver results
+     **********************************
+     */
+    public ClosableResult(AsyncProc<T> asyncProc, int bufSize, boolean isDelayError, Scheduler scheduler) {
+        this(asyncProc, new RunOptions().setBufSize(bufSize)
+                                        .setDelayError(isDelayError)
+                                        .setScheduler(scheduler));
+    }
+
+    /**
+     **********************************
+     * @param asyncProc execute AsyncProc instance
+     * @param options execute options
+     **********************************
+     */
+    public ClosableResult(AsyncProc<T> asyncProc, RunOptions options) {
+        int bufSize = options.getBufSize();
+        boolean isDelayError = options.isDelayError();
+        Scheduler scheduler = options.getScheduler();
 
-		logger.trace("exec proc : bufSize={} / delayError={}", bufSize, isDelayError);
+        logger.trace("exec proc : bufSize={} / delayError={} / direct={} / adaptive={}",
+                        bufSize, isDelayError, options.isDirect(), options.isAdaptive());
 
         this.asyncProc = asyncProc;
-        Flowable<T> f = Flowable.create(asyncProc, BackpressureStrategy.BUFFER)
-	                            .doOnRequest(asyncProc.getExecFunc())
-                                .doOnError(new Consumer<Throwable>() {
-                                    @Override
-                                    public void accept(Throwable t) throws Exception {
-                                        logger.error("error occurred now. [{}]", t.toString());
-                                    }
-                                 })
-                                .observeOn(Schedulers.newThread(), isDelayError, bufSize)
-                                .subscribeOn(Schedulers.newThread(), false);
+        this.metrics = asyncProc.getMetrics();
+        this.closeMode = options.getCloseMode();
+        this.scheduler = scheduler;
+        Flowable<T> f;
+        if (options.isDirect() || options.isAdaptive()) {
+            f = asyncProc.source()
+                        .doOnError(errorLogger)
+                        .subscribeOn(scheduler, false);
+        } else {
+            f = Flowable.create(asyncProc, BackpressureStrategy.BUFFER)
+                        .doOnRequest(asyncProc.getExecFunc())
+                        .doOnError(errorLogger)
+                        .observeOn(scheduler, isDelayError, bufSize)
+                        .subscribeOn(scheduler, false);
+        }
+
+        this.blocking = new BlockingFlowable<>(f, bufSize, isDelayError, metrics,
+                                                options.newBufferSizer(), asyncProc.getByteBudget());
+        this.iterator = blocking.iterator();
+    }
+
+    /**
+     **********************************
+     * wrap flowable that never emits more than requested.
+     * <br>
+     * close() cancels the subscription.
+     * @param source source flowable
+     * @param options execute options(scheduler and direct are not used)
+     * @param metrics flow control counters(nullable)
+     **********************************
+     */
+    ClosableResult(Flowable<T> source, RunOptions options, FlowMetrics metrics) {
+        logger.trace("exec flowable : bufSize={} / delayError={}", options.getBufSize(), options.isDelayError());
 
- 	    this.iterator = new BlockingFlowable<>(f, bufSize, isDelayError).iterator();
-	}
+        this.asyncProc = null;
+        this.metrics = metrics;
+        this.closeMode = options.getCloseMode();
+        this.scheduler = options.getScheduler();
+        this.blocking = new BlockingFlowable<>(source.doOnError(errorLogger), options.getBufSize(),
+                                                options.isDelayError(), metrics, options.newBufferSizer());
+        this.iterator = blocking.iterator();
+    }
 
     /**
      **********************************
@@ -283,14 +372,31 @@ public final class ClosableResult<T> implements Iterable<T>, Closeable {
      **********************************
      */
     public ClosableResult(Iterable<T> source, int bufSize, boolean isDelayError) {
+        this(source, bufSize, isDelayError, AsyncExecutors.getDefaultScheduler());
+    }
+
+    /**
+     **********************************
+     * @param source the source Iterable sequence
+     * @param bufSize buffeer size
+     * @param isDelayError if true, the exception is delayed until all added data is read.
+     *                     if false, immediately raise an exception.
+     * @param scheduler scheduler for read source and deliver results
+     **********************************
+     */
+    public ClosableResult(Iterable<T> source, int bufSize, boolean isDelayError, Scheduler scheduler) {
         this.asyncProc = null;
+        this.metrics = null;
+        this.closeMode = CloseMode.ABORT;
+        this.scheduler = scheduler;
 
         Flowable<T> f = Flowable.fromIterable(source)
-                .observeOn(Schedulers.newThread(), isDelayError)
-                .subscribeOn(Schedulers.newThread(), false);
+                .observeOn(scheduler, isDelayError)
+                .subscribeOn(scheduler, false);
 
         // generate iterator
-        this.iterator = new BlockingFlowable<>(f, bufSize, isDelayError).iterator();
+        this.blocking = new BlockingFlowable<>(f, bufSize, isDelayError);
+        this.iterator = blocking.iterator();
     }
 
     /**
@@ -309,21 +415,389 @@ public final class ClosableResult<T> implements Iterable<T>, Closeable {
         return results;
     }
 
+    /**
+     **********************************
+     * get result list(non-blocking api).
+     * @return future of the result list
+     * @see #reduceAsync(Object, BiFunction)
+     **********************************
+     */
+    public CompletableFuture<List<T>> toListAsync() {
+        List<T> results = new ArrayList<>();
+        return reduceAsync(results, new BiFunction<List<T>, T, List<T>>() {
+            @Override
+            public List<T> apply(List<T> list, T val) {
+                list.add(val);
+                return list;
+            }
+        });
+    }
+
+    /**
+     **********************************
+     * process each result(non-blocking api).
+     * @param action result action. called on the delivery thread
+     * @return future completed after all results are processed
+     * @see #reduceAsync(Object, BiFunction)
+     **********************************
+     */
+    public CompletableFuture<Void> forEachAsync(final Consumer<? super T> action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action can not null.");
+        }
+        return reduceAsync((Void) null, new BiFunction<Void, T, Void>() {
+            @Override
+            public Void apply(Void acc, T val) throws Exception {
+                action.accept(val);
+                return null;
+            }
+        });
+    }
+
+    /**
+     **********************************
+     * count results(non-blocking api).
+     * @return future of the result count
+     * @see #reduceAsync(Object, BiFunction)
+     **********************************
+     */
+    public CompletableFuture<Long> countAsync() {
+        final long[] count = new long[1];
+        return reduceAsync(count, new BiFunction<long[], T, long[]>() {
+            @Override
+            public long[] apply(long[] acc, T val) {
+                acc[0]++;
+                return acc;
+            }
+        }).thenApply(new java.util.function.Function<long[], Long>() {
+            @Override
+            public Long apply(long[] acc) {
+                return acc[0];
+            }
+        });
+    }
+
+    /**
+     **********************************
+     * reduce results(non-blocking api).
+     * <br>
+     * the remaining results are consumed on the thread that delivers them
+     * (the scheduler thread, or the process thread if direct). already buffered
+     * results are handed to a scheduler thread, so neither the calling thread
+     * nor a waiting pool thread is blocked.
+     * the result is closed when the future is completed. if the future is
+     * cancelled, the process is stopped by close().
+     * exceptions of the process or the accumulator complete the future exceptionally.
+     * <pre>
+     * {@code
+     * proc.run().toListAsync().thenAccept(new java.util.function.Consumer<List<String>>() {
+     *   public void accept(List<String> list) {
+     *     // called on the delivery thread.
+     *   }
+     * });
+     * }
+     * </pre>
+     * @param identity initial value
+     * @param accumulator accumulate function. called on the delivery thread
+     * @param <R> reduced type
+     * @return future of the reduced value
+     **********************************
+     */
+    public <R> CompletableFuture<R> reduceAsync(final R identity, final BiFunction<R, ? super T, R> accumulator) {
+        if (accumulator == null) {
+            throw new IllegalArgumentException("accumulator can not null.");
+        }
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        future.whenComplete(new BiConsumer<R, Throwable>() {
+            @Override
+            public void accept(R value, Throwable t) {
+                // close on complete(stop the process if cancelled)
+                closeAsync();
+            }
+        });
+        final BlockingFlowable.Listener<T> listener = new BlockingFlowable.Listener<T>() {
+            private R acc = identity;
+
+            @Override
+            public void onNext(T value) throws Exception {
+                if (!future.isDone()) {
+                    acc = accumulator.apply(acc, value);
+                }
+            }
+
+            @Override
+            public void onDone(Throwable error) {
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(acc);
+                }
+            }
+        };
+        // drain buffered results off the calling thread. later results are
+        // drained by the delivery thread.
+        scheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                blocking.drainTo(listener);
+            }
+        });
+        return future;
+    }
+
+    /**
+     **********************************
+     * get results in batches(blocking api).
+     * <br>
+     * each batch waits for its first value, then takes every buffered value
+     * up to maxSize at once. if fewer values are buffered, the batch waits
+     * up to maxWait for more and is returned partially filled.
+     * <pre>
+     * {@code
+     * for (List<String> batch : cr.batches(1000, 100, TimeUnit.MILLISECONDS)) {
+     *   sink.bulkWrite(batch);
+     * }
+     * }
+     * </pre>
+     * the batches share the iterator of this result.
+     * @param maxSize max batch size
+     * @param maxWait max wait time for filling a batch
+     * @param unit maxWait time unit
+     * @return batches
+     **********************************
+     */
+    public Iterable<List<T>> batches(final int maxSize, long maxWait, TimeUnit unit) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize is greater than 0.");
+        }
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("maxWait is 0 or greater.");
+        }
+        final long maxWaitNanos = unit.toNanos(maxWait);
+        return new Iterable<List<T>>() {
+            @Override
+            public Iterator<List<T>> iterator() {
+                return new Iterator<List<T>>() {
+                    private List<T> nextBatch = null;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (nextBatch == null) {
+                            nextBatch = blocking.nextBatch(maxSize, maxWaitNanos);
+                        }
+                        return nextBatch != null;
+                    }
+
+                    @Override
+                    public List<T> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        List<T> batch = nextBatch;
+                        nextBatch = null;
+                        return batch;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("remove");
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     **********************************
+     * map values in parallel, keeping the source order.
+     * <br>
+     * the function is applied on {@link AsyncExecutors#getDefaultExecutor()}.
+     * @param fn map function(must not return null)
+     * @param concurrency max concurrent map count
+     * @param window max in-flight values
+     * @param <R> result element type
+     * @return mapped result
+     * @see #mapParallel(Function, int, int, Executor)
+     **********************************
+     */
+    public <R> ClosableResult<R> mapParallel(Function<? super T, ? extends R> fn, int concurrency, int window) {
+        return mapParallel(fn, concurrency, window, AsyncExecutors.getDefaultExecutor());
+    }
+
+    /**
+     **********************************
+     * map values in parallel, keeping the source order.
+     * <br>
+     * the function is applied on the executor by up to {@code concurrency}
+     * tasks at once, and at most {@code window} values are mapped ahead of
+     * the consumer. no threads are created per call.
+     * closing the returned result also closes this result.
+     * @param fn map function(must not return null)
+     * @param concurrency max concurrent map count
+     * @param window max in-flight values
+     * @param executor executor for map function
+     * @param <R> result element type
+     * @return mapped result
+     **********************************
+     */
+    public <R> ClosableResult<R> mapParallel(Function<? super T, ? extends R> fn, int concurrency, int window,
+                                                Executor executor) {
+        final ClosableResult<T> source = this;
+        ParallelMapFunc<T, R> mapFunc = new ParallelMapFunc<>(source, fn, concurrency, window, executor);
+        PostFunc closeSource = new PostFunc() {
+            @Override
+            public void execute(ExecResult result) {
+                // propagate cancel
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    logger.warn("failed to close source. [{}]", e.toString());
+                }
+            }
+        };
+        return new AsyncProc<R>(mapFunc).setPostFunc(closeSource).run();
+    }
+
+    /**
+     **********************************
+     * get results as a stream.
+     * <br>
+     * the stream is splittable. in a parallel stream, each split takes the
+     * buffered values as an array-backed chunk, so downstream operations
+     * run on multiple threads.
+     * closing the stream closes this result.
+     * <pre>
+     * {@code
+     * try (Stream<String> s = cr.stream()) {
+     *   s.parallel().map(this::parse).forEach(sink::write);
+     * }
+     * }
+     * </pre>
+     * the stream shares the iterator of this result.
+     * @return result stream
+     **********************************
+     */
+    public Stream<T> stream() {
+        final ClosableResult<T> self = this;
+        return StreamSupport.stream(new ResultSpliterator<>(blocking), false)
+                            .onClose(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        self.close();
+                                    } catch (IOException e) {
+                                        throw new UncheckedIOException(e);
+                                    }
+                                }
+                            });
+    }
+
+    /**
+     **********************************
+     * get current buffer window(for monitoring).
+     * <br>
+     * in adaptive mode, the window changes with the element rate.
+     * @return buffer window size
+     **********************************
+     */
+    public int getBufferWindow() {
+        return blocking.getWindow();
+    }
+
     @Override
     public Iterator<T> iterator() {
         return iterator;
     }
 
+    /**
+     **********************************
+     * close result with the mode of {@link RunOptions#setCloseMode(CloseMode)}.
+     * <br>
+     * returns without waiting for the process thread.
+     * @see #closeAsync()
+     **********************************
+     */
     @Override
     public final void close() throws IOException {
-        if (!isClosed) {
+        closeAsync(closeMode);
+    }
+
+    /**
+     **********************************
+     * close result.
+     * @param mode close mode
+     * @see #closeAsync(CloseMode)
+     **********************************
+     */
+    public final void close(CloseMode mode) {
+        closeAsync(mode);
+    }
+
+    /**
+     **********************************
+     * close result with the mode of {@link RunOptions#setCloseMode(CloseMode)}.
+     * @return future completed when the process thread is released
+     * @see #closeAsync(CloseMode)
+     **********************************
+     */
+    public final CompletableFuture<ExecResult> closeAsync() {
+        return closeAsync(closeMode);
+    }
+
+    /**
+     **********************************
+     * close result.
+     * <br>
+     * unread values are discarded, and the process is stopped by the mode.
+     * the returned future is completed when execute() of the process
+     * has returned, with the result that holds the close latency.
+     * <pre>
+     * {@code
+     * ExecResult r = cr.closeAsync(CloseMode.ABORT).get(1, TimeUnit.SECONDS);
+     * }
+     * </pre>
+     * only the first call closes the result. later calls return the same future.
+     * @param mode close mode
+     * @return future completed when the process thread is released.
+     *          completed with null if the result has no process(e.g. iterable source)
+     **********************************
+     */
+    public final CompletableFuture<ExecResult> closeAsync(CloseMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("mode can not null.");
+        }
+        synchronized (this) {
+            if (isClosed) {
+                return closeFuture;
+            }
             isClosed = true;
-            logger.trace("{}.close()", getClass().getSimpleName());
-            if (asyncProc != null) {
-                if (!asyncProc.isDisposed()) {
-                    asyncProc.dispose();
-                }
+            closeFuture = asyncProc != null ? asyncProc.released() : CompletableFuture.<ExecResult>completedFuture(null);
+        }
+        logger.trace("{}.close({})", getClass().getSimpleName(), mode);
+        JfrEvents.resultClose(metrics);
+        if (asyncProc != null) {
+            if (!asyncProc.isDisposed()) {
+                asyncProc.dispose(mode);
             }
+        } else {
+            blocking.cancel();
         }
+        return closeFuture;
+    }
+
+    /**
+     ********************************************
+     * how to stop the process on close.
+     ********************************************
+     */
+    public enum CloseMode {
+        /**
+         * stop the process at its next append(). the process thread is not interrupted.
+         * <br>
+         * buffered values are discarded, the process is not drained.
+         */
+        COOPERATIVE,
+        /** stop the process at its next append(), and interrupt the process thread. */
+        ABORT
     }
 }
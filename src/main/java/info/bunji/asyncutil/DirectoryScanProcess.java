@@ -0,0 +1,404 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
+
+/**
+ ************************************************
+ * parallel directory tree scan process.
+ *
+ * <p>walks the directory tree on worker threads, and emits the regular
+ * files(or the values read from them) in arrival order.<br>
+ * usage:
+ * <pre>
+ * {@code
+ * DirectoryScanProcess<Doc> proc = DirectoryScanProcess.of(root, new Function<Path, Doc>() {
+ *                                      public Doc apply(Path file) throws Exception {
+ *                                        return Doc.parse(file);
+ *                                      }
+ *                                  }).setConcurrency(8);
+ * try (ClosableResult<Doc> cr = proc.run()) {
+ *   for (Doc doc : cr) {
+ *     // process result.
+ *   }
+ * }
+ * }
+ * </pre>
+ * subdirectories and batches of files are processed as separate tasks, so
+ * both walking and reading run on up to {@code concurrency} workers of the
+ * executor(default {@link AsyncExecutors#getDefaultExecutor()}).
+ * values are emitted by one worker at a time, so the byte bound of
+ * {@code setWeigher()} and the spill of {@code setSpill()} can be used.
+ * while the consumer is not requesting, one worker blocks in append() holding
+ * the emit lock, and the other workers block on the lock with one read value
+ * each. so at most {@code concurrency} values are read ahead of the buffer,
+ * and the blocked workers keep their executor threads.
+ * {@code close()} stops every worker at its next append.
+ * an exception in the reader stops the scan.
+ * @param <T> result type
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class DirectoryScanProcess<T> extends AsyncProcess<T> {
+
+    /** files per task */
+    static final int FILE_BATCH = 32;
+
+    private final Path root;
+
+    private final Function<? super Path, ? extends T> reader;
+
+    private int concurrency = Runtime.getRuntime().availableProcessors();
+
+    private Executor executor = null;
+
+    private Predicate<? super Path> filter = null;
+
+    private int maxDepth = Integer.MAX_VALUE;
+
+    /** set when the scan should stop */
+    private volatile boolean stopped = false;
+
+    /** serializes append() of the workers */
+    private final Object emitLock = new Object();
+
+    private DirectoryScanProcess(Path root, Function<? super Path, ? extends T> reader) {
+        if (root == null) {
+            throw new IllegalArgumentException("root can not null.");
+        }
+        if (reader == null) {
+            throw new IllegalArgumentException("reader can not null.");
+        }
+        this.root = root;
+        this.reader = reader;
+    }
+
+    /**
+     **********************************
+     * create process that emits file paths.
+     * @param root root directory
+     * @return process
+     **********************************
+     */
+    public static DirectoryScanProcess<Path> of(Path root) {
+        return new DirectoryScanProcess<Path>(root, new Function<Path, Path>() {
+            @Override
+            public Path apply(Path file) {
+                return file;
+            }
+        });
+    }
+
+    /**
+     **********************************
+     * create process that emits values read from files.
+     * <br>
+     * the reader is called on the worker threads. if it returns null,
+     * the file is skipped.
+     * @param root root directory
+     * @param reader file reader
+     * @param <T> result type
+     * @return process
+     **********************************
+     */
+    public static <T> DirectoryScanProcess<T> of(Path root, Function<? super Path, ? extends T> reader) {
+        return new DirectoryScanProcess<T>(root, reader);
+    }
+
+    /**
+     **********************************
+     * set worker thread count.
+     * @param concurrency worker thread count(default available processors)
+     * @return this instance
+     **********************************
+     */
+    public DirectoryScanProcess<T> setConcurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency is greater than 0.");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     **********************************
+     * set executor for the workers.
+     * <br>
+     * the executor must run at least one task at a time. up to
+     * {@code concurrency} tasks are submitted per run.
+     * @param executor executor. if null, use {@link AsyncExecutors#getDefaultExecutor()}
+     * @return this instance
+     **********************************
+     */
+    public DirectoryScanProcess<T> setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     **********************************
+     * set file filter.
+     * <br>
+     * called on the worker threads before the reader.
+     * @param filter file filter. if null, accept all regular files
+     * @return this instance
+     **********************************
+     */
+    public DirectoryScanProcess<T> setFilter(Predicate<? super Path> filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     **********************************
+     * set max directory depth.
+     * @param maxDepth max depth(0 scans the files in root only)
+     * @return this instance
+     **********************************
+     */
+    public DirectoryScanProcess<T> setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth is 0 or greater.");
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        Scan scan = new Scan(executor != null ? executor : AsyncExecutors.getDefaultExecutor());
+        try {
+            scan.run();
+        } finally {
+            stopped = true;
+        }
+    }
+
+    @Override
+    protected void postProcess() {
+        // stop workers on close
+        stopped = true;
+        super.postProcess();
+    }
+
+    // append on a worker thread(one worker at a time)
+    private void emit(T value) {
+        synchronized (emitLock) {
+            append(value);
+        }
+    }
+
+    /**
+     ********************************************
+     * scan task.
+     ********************************************
+     */
+    private abstract class Item {
+        abstract void run(Scan scan) throws Exception;
+    }
+
+    /**
+     ********************************************
+     * pending tasks of one run, and the workers that process them.
+     ********************************************
+     */
+    private final class Scan {
+
+        private final Executor executor;
+
+        /** pending tasks(last in, first out) */
+        private final Deque<Item> items = new ConcurrentLinkedDeque<>();
+
+        /** queued or running task count */
+        private final AtomicInteger pending = new AtomicInteger(0);
+
+        /** running worker count */
+        private final AtomicInteger running = new AtomicInteger(0);
+
+        /** first exception */
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        /** released when all tasks finished, or failed */
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        Scan(Executor executor) {
+            this.executor = executor;
+        }
+
+        // scan the tree and wait for the workers
+        void run() throws Exception {
+            submit(new DirItem(root, 0));
+            finished.await();
+            Throwable t = error.get();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            } else if (t != null) {
+                throw (Error) t;
+            }
+        }
+
+        void submit(Item item) {
+            pending.incrementAndGet();
+            items.push(item);
+            dispatch();
+        }
+
+        // start workers up to concurrency
+        private void dispatch() {
+            for (;;) {
+                int r = running.get();
+                if (r >= concurrency || items.isEmpty()) {
+                    return;
+                }
+                if (running.compareAndSet(r, r + 1)) {
+                    try {
+                        executor.execute(new Worker());
+                    } catch (RuntimeException e) {
+                        running.decrementAndGet();
+                        fail(e);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void fail(Throwable t) {
+            error.compareAndSet(null, t);
+            stopped = true;
+            finished.countDown();
+        }
+
+        /**
+         ****************************************
+         * run pending tasks until none left.
+         ****************************************
+         */
+        private final class Worker implements Runnable {
+            @Override
+            public void run() {
+                try {
+                    Item item;
+                    while ((item = items.poll()) != null) {
+                        try {
+                            if (!stopped) {
+                                item.run(Scan.this);
+                            }
+                        } catch (Throwable t) {
+                            fail(t);
+                        } finally {
+                            if (pending.decrementAndGet() == 0) {
+                                finished.countDown();
+                            }
+                        }
+                    }
+                } finally {
+                    running.decrementAndGet();
+                }
+                // task added while exiting
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     ********************************************
+     * list a directory and submit its entries.
+     ********************************************
+     */
+    private final class DirItem extends Item {
+
+        private final Path dir;
+
+        private final int depth;
+
+        DirItem(Path dir, int depth) {
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        void run(Scan scan) throws Exception {
+            List<Path> files = new ArrayList<>(FILE_BATCH);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (stopped) {
+                        return;
+                    }
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (depth < maxDepth) {
+                            scan.submit(new DirItem(entry, depth + 1));
+                        }
+                    } else if (Files.isRegularFile(entry)) {
+                        files.add(entry);
+                        if (files.size() >= FILE_BATCH) {
+                            scan.submit(new FileItem(files));
+                            files = new ArrayList<>(FILE_BATCH);
+                        }
+                    }
+                }
+            }
+            if (!files.isEmpty()) {
+                new FileItem(files).run(scan);
+            }
+        }
+    }
+
+    /**
+     ********************************************
+     * read and emit a batch of files.
+     ********************************************
+     */
+    private final class FileItem extends Item {
+
+        private final List<Path> files;
+
+        FileItem(List<Path> files) {
+            this.files = files;
+        }
+
+        @Override
+        void run(Scan scan) throws Exception {
+            for (Path file : files) {
+                if (stopped) {
+                    return;
+                }
+                if (filter != null && !filter.test(file)) {
+                    continue;
+                }
+                T value = reader.apply(file);
+                if (value != null) {
+                    emit(value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ ************************************************
+ * double value async execute result.
+ * <br>
+ * use {@link #iterator()} and {@code nextDouble()} to read values without boxing.
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class DoubleClosableResult implements Iterable<Double>, Closeable {
+
+    private final PrimitiveChannel.OfDouble channel;
+
+    private final PrimitiveIterator.OfDouble iterator;
+
+    /** mode used by close() */
+    private final ClosableResult.CloseMode closeMode;
+
+    private volatile boolean isClosed = false;
+
+    DoubleClosableResult(final PrimitiveChannel.OfDouble channel, ClosableResult.CloseMode closeMode) {
+        this.channel = channel;
+        this.closeMode = closeMode;
+        this.iterator = new PrimitiveIterator.OfDouble() {
+            @Override
+            public boolean hasNext() {
+                return channel.await();
+            }
+
+            @Override
+            public double nextDouble() {
+                return channel.poll();
+            }
+        };
+    }
+
+    @Override
+    public PrimitiveIterator.OfDouble iterator() {
+        return iterator;
+    }
+
+    /**
+     **********************************
+     * get all results(blocking api).
+     * @return result array
+     **********************************
+     */
+    public double[] toArray() {
+        double[] results = new double[Math.min(channel.capacity, 1024)];
+        int size = 0;
+        for (;;) {
+            if (size == results.length) {
+                results = Arrays.copyOf(results, size << 1);
+            }
+            int n = channel.read(results, size, results.length - size);
+            if (n < 0) {
+                break;
+            }
+            size += n;
+        }
+        return Arrays.copyOf(results, size);
+    }
+
+    /**
+     **********************************
+     * close result with the mode of {@link RunOptions#setCloseMode(ClosableResult.CloseMode)}.
+     * <br>
+     * returns without waiting for the process thread.
+     * @see #closeAsync()
+     **********************************
+     */
+    @Override
+    public void close() throws IOException {
+        closeAsync(closeMode);
+    }
+
+    /**
+     **********************************
+     * close result.
+     * @param mode close mode
+     * @see #closeAsync(ClosableResult.CloseMode)
+     **********************************
+     */
+    public void close(ClosableResult.CloseMode mode) {
+        closeAsync(mode);
+    }
+
+    /**
+     **********************************
+     * close result with the mode of {@link RunOptions#setCloseMode(ClosableResult.CloseMode)}.
+     * @return future completed when the process thread is released
+     * @see #closeAsync(ClosableResult.CloseMode)
+     **********************************
+     */
+    public CompletableFuture<ExecResult> closeAsync() {
+        return closeAsync(closeMode);
+    }
+
+    /**
+     **********************************
+     * close result.
+     * <br>
+     * same as {@link ClosableResult#closeAsync(ClosableResult.CloseMode)}.
+     * @param mode close mode
+     * @return future completed when the process thread is released
+     **********************************
+     */
+    public CompletableFuture<ExecResult> closeAsync(ClosableResult.CloseMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("mode can not null.");
+        }
+        if (!isClosed) {
+            isClosed = true;
+            JfrEvents.resultClose(channel.getMetrics());
+            if (!channel.isDisposed()) {
+                channel.dispose(mode);
+            }
+        }
+        return channel.released();
+    }
+}
@@ -29,6 +29,18 @@ public final class ExecResult {
 
     private final Throwable throwable;
 
+    private final long producerWaitNanos;
+
+    private final long consumerWaitNanos;
+
+    private final long bufferHighWater;
+
+    private final long requestCount;
+
+    private final long firstElementNanos;
+
+    private final long closeLatencyNanos;
+
     /**
      **********************************
      * @param count processed count
@@ -47,9 +59,48 @@ public final class ExecResult {
      **********************************
      */
     ExecResult(long count, long execTime, Throwable t) {
+        this(count, execTime, t, null);
+    }
+
+    /**
+     **********************************
+     * @param count processed count
+     * @param execTime execute time(ms)
+     * @param t occurred exception
+     * @param metrics flow control counters(nullable)
+     **********************************
+     */
+    ExecResult(long count, long execTime, Throwable t, FlowMetrics metrics) {
+        this(count, execTime, t, metrics, -1);
+    }
+
+    /**
+     **********************************
+     * @param count processed count
+     * @param execTime execute time(ms)
+     * @param t occurred exception
+     * @param metrics flow control counters(nullable)
+     * @param closeLatency time from close to the process released(ns). -1 if unknown
+     **********************************
+     */
+    ExecResult(long count, long execTime, Throwable t, FlowMetrics metrics, long closeLatency) {
+        this.closeLatencyNanos = closeLatency;
         this.processedCount = Math.max(count, 0);
         this.execTime = execTime;
         this.throwable = t;
+        if (metrics != null) {
+            this.producerWaitNanos = metrics.getProducerWaitNanos();
+            this.consumerWaitNanos = metrics.getConsumerWaitNanos();
+            this.bufferHighWater = metrics.getHighWater();
+            this.requestCount = metrics.getRequestCount();
+            this.firstElementNanos = metrics.getFirstElementNanos();
+        } else {
+            this.producerWaitNanos = 0;
+            this.consumerWaitNanos = 0;
+            this.bufferHighWater = 0;
+            this.requestCount = 0;
+            this.firstElementNanos = -1;
+        }
     }
 
     /**
@@ -93,13 +144,89 @@ public final class ExecResult {
         return throwable;
     }
 
+    /**
+     **********************************
+     * get total time the process was blocked in append() waiting for a request.
+     * <br>
+     * if this is large, the consumer is the bottleneck.
+     * @return blocked time(ns)
+     **********************************
+     */
+    public long getProducerWaitNanos() {
+        return producerWaitNanos;
+    }
+
+    /**
+     **********************************
+     * get total time the consumer was blocked in hasNext() waiting for a value.
+     * <br>
+     * if this is large, the process is the bottleneck.
+     * counted until the process is finished.
+     * @return blocked time(ns)
+     **********************************
+     */
+    public long getConsumerWaitNanos() {
+        return consumerWaitNanos;
+    }
+
+    /**
+     **********************************
+     * get max number of values held in the result buffer.
+     * @return buffer high-water mark
+     **********************************
+     */
+    public long getBufferHighWater() {
+        return bufferHighWater;
+    }
+
+    /**
+     **********************************
+     * get number of requests received by the process.
+     * @return request count
+     **********************************
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     **********************************
+     * get time from process start to the first emitted value.
+     * @return time to first value(ns). -1 if no value was emitted
+     **********************************
+     */
+    public long getFirstElementNanos() {
+        return firstElementNanos;
+    }
+
+    /**
+     **********************************
+     * get time from close to the process thread released.
+     * <br>
+     * set in the result of {@link ClosableResult#closeAsync()} only.
+     * if this is large, the process does not respond to close.
+     * @return close latency(ns). -1 if not closed while running
+     **********************************
+     */
+    public long getCloseLatencyNanos() {
+        return closeLatencyNanos;
+    }
+
     @Override
     public String toString() {
-        return String.format("ExecResult: isSuccess=%s/execTime=%dms/processed=%d/exception=%s",
+        return String.format("ExecResult: isSuccess=%s/execTime=%dms/processed=%d/exception=%s"
+                                        + "/producerWait=%dns/consumerWait=%dns/highWater=%d/requests=%d/firstElement=%dns"
+                                        + "/closeLatency=%dns",
                                         isSuccess(),
                                         getExecTime(),
                                         getProcessed(),
-                                        getException());
+                                        getException(),
+                                        getProducerWaitNanos(),
+                                        getConsumerWaitNanos(),
+                                        getBufferHighWater(),
+                                        getRequestCount(),
+                                        getFirstElementNanos(),
+                                        getCloseLatencyNanos());
         //return super.toString();
     }
 }
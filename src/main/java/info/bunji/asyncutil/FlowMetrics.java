@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.bunji.asyncutil.functions.FlowMetricsListener;
+
+/**
+ ************************************************
+ * flow control counters of a process.
+ * <br>
+ * counters are updated only on blocking paths, on requests and on buffer
+ * growth, so the per value cost stays small.
+ * @author f.kinoshita
+ ************************************************
+ */
+final class FlowMetrics {
+
+    private final AtomicLong producerWaitNanos = new AtomicLong(0);
+
+    private final AtomicLong consumerWaitNanos = new AtomicLong(0);
+
+    private final AtomicLong requestCount = new AtomicLong(0);
+
+    private final AtomicLong firstElementNanos = new AtomicLong(-1);
+
+    /** written by the buffer producer only */
+    private volatile long highWater = 0;
+
+    private volatile long startNanos = System.nanoTime();
+
+    private volatile FlowMetricsListener listener = null;
+
+    private volatile String processName = "";
+
+    private volatile int processId = 0;
+
+    void setProcess(String name, int id) {
+        this.processName = name;
+        this.processId = id;
+    }
+
+    String getProcessName() {
+        return processName;
+    }
+
+    int getProcessId() {
+        return processId;
+    }
+
+    void setListener(FlowMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    void producerBlocked(long nanos) {
+        producerWaitNanos.addAndGet(nanos);
+        FlowMetricsListener l = listener;
+        if (l != null) {
+            l.onProducerBlocked(nanos);
+        }
+    }
+
+    void consumerBlocked(long nanos) {
+        consumerWaitNanos.addAndGet(nanos);
+        FlowMetricsListener l = listener;
+        if (l != null) {
+            l.onConsumerBlocked(nanos);
+        }
+    }
+
+    void requested(long n) {
+        requestCount.incrementAndGet();
+        FlowMetricsListener l = listener;
+        if (l != null) {
+            l.onRequest(n);
+        }
+    }
+
+    void firstElement() {
+        long nanos = System.nanoTime() - startNanos;
+        if (firstElementNanos.compareAndSet(-1, nanos)) {
+            FlowMetricsListener l = listener;
+            if (l != null) {
+                l.onFirstElement(nanos);
+            }
+        }
+    }
+
+    void buffered(long size) {
+        if (size > highWater) {
+            highWater = size;
+        }
+    }
+
+    long getProducerWaitNanos() {
+        return producerWaitNanos.get();
+    }
+
+    long getConsumerWaitNanos() {
+        return consumerWaitNanos.get();
+    }
+
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    long getFirstElementNanos() {
+        return firstElementNanos.get();
+    }
+
+    long getHighWater() {
+        return highWater;
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ ************************************************
+ * hashed timing wheel.
+ *
+ * <p>a {@link ScheduledExecutorService} for very large numbers of timers.
+ * schedule and cancel are O(1). a single tick thread advances the wheel,
+ * and due tasks are dispatched to the worker executor.<br>
+ * tasks run up to one tick late, so use a tick shorter than the shortest interval.
+ * usage:
+ * <pre>
+ * {@code
+ * HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 512, workerPool);
+ * AsyncExecutors.setDefaultScheduledExecutor(timer);  // or proc.setScheduledExecutor(timer)
+ * }
+ * </pre>
+ * {@code shutdown()} stops the tick thread and cancels the tasks not yet due.
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class HashedWheelTimer extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    /** default tick duration(ms) */
+    static final long DEFAULT_TICK_MILLIS = 10;
+
+    /** default number of buckets */
+    static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    /** max tasks moved into the wheel per tick */
+    private static final int MAX_TRANSFER = 100000;
+
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final Executor worker;
+
+    private final Queue<WheelTask<?>> pendingTasks = new ConcurrentLinkedQueue<>();
+
+    private final Queue<WheelTask<?>> cancelledTasks = new ConcurrentLinkedQueue<>();
+
+    private final long startTime = System.nanoTime();
+
+    private final Thread tickThread;
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private final List<Runnable> unprocessed = new ArrayList<>();
+
+    private volatile int state = RUNNING;
+
+    /** current tick(tick thread only) */
+    private long tick = 0;
+
+    /**
+     **********************************
+     * 10ms tick, 512 buckets, dispatch to {@link AsyncExecutors#getDefaultExecutor()}.
+     **********************************
+     */
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL, AsyncExecutors.getDefaultExecutor());
+    }
+
+    /**
+     **********************************
+     * @param tickDuration tick duration
+     * @param unit tickDuration time unit
+     * @param ticksPerWheel number of buckets(rounded up to power of two)
+     * @param worker executor for due tasks
+     **********************************
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, Executor worker) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration is greater than 0.");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel is between 1 and 2^30.");
+        }
+        if (worker == null) {
+            throw new IllegalArgumentException("worker can not null.");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = PrimitiveChannel.roundToPowerOfTwo(ticksPerWheel);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = worker;
+
+        this.tickThread = AsyncExecutors.newThreadFactory("asyncutil-wheel").newThread(new Runnable() {
+            @Override
+            public void run() {
+                runTicks();
+            }
+        });
+        tickThread.start();
+    }
+
+    private long now() {
+        return System.nanoTime() - startTime;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return add(new WheelTask<Void>(Executors.<Void>callable(command, null), deadline(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return add(new WheelTask<V>(callable, deadline(delay, unit), 0));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period is greater than 0.");
+        }
+        return add(new WheelTask<Void>(Executors.<Void>callable(command, null),
+                                        deadline(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay is greater than 0.");
+        }
+        return add(new WheelTask<Void>(Executors.<Void>callable(command, null),
+                                        deadline(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    private long deadline(long delay, TimeUnit unit) {
+        long d = Math.min(Math.max(unit.toNanos(delay), 0), Long.MAX_VALUE >> 1);
+        return now() + d;
+    }
+
+    private <V> WheelTask<V> add(WheelTask<V> task) {
+        if (state != RUNNING) {
+            throw new RejectedExecutionException("timer is shutdown.");
+        }
+        pendingTasks.add(task);
+        if (state != RUNNING && pendingTasks.remove(task)) {
+            // shutdown while adding
+            throw new RejectedExecutionException("timer is shutdown.");
+        }
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        if (state == RUNNING) {
+            state = SHUTDOWN;
+            LockSupport.unpark(tickThread);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        if (Thread.currentThread() != tickThread) {
+            boolean interrupted = false;
+            for (;;) {
+                try {
+                    terminated.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (unprocessed) {
+            return new ArrayList<>(unprocessed);
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private void runTicks() {
+        try {
+            while (state == RUNNING) {
+                long deadline = waitForNextTick();
+                if (state != RUNNING) {
+                    break;
+                }
+                removeCancelledTasks();
+                transferPendingTasks();
+                wheel[(int) (tick & mask)].expire(deadline);
+                tick++;
+            }
+        } catch (Throwable t) {
+            logger.error("tick thread terminated. [{}]", t.toString());
+        } finally {
+            collectUnprocessed();
+            terminated.countDown();
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        for (;;) {
+            long current = now();
+            long sleep = deadline - current;
+            if (sleep <= 0 || state != RUNNING) {
+                return current;
+            }
+            LockSupport.parkNanos(this, sleep);
+        }
+    }
+
+    private void removeCancelledTasks() {
+        WheelTask<?> task;
+        while ((task = cancelledTasks.poll()) != null) {
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+            }
+        }
+    }
+
+    private void transferPendingTasks() {
+        WheelTask<?> task;
+        for (int i = 0; i < MAX_TRANSFER && (task = pendingTasks.poll()) != null; i++) {
+            if (task.isCancelled()) {
+                continue;
+            }
+            long calculated = task.deadline / tickNanos;
+            task.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(task);
+        }
+    }
+
+    private void dispatch(WheelTask<?> task) {
+        try {
+            worker.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.warn("task rejected by worker. [{}]", e.toString());
+            task.cancel(false);
+        }
+    }
+
+    private void collectUnprocessed() {
+        List<Runnable> tasks = new ArrayList<>();
+        for (Bucket bucket : wheel) {
+            bucket.clear(tasks);
+        }
+        WheelTask<?> task;
+        while ((task = pendingTasks.poll()) != null) {
+            if (!task.isCancelled()) {
+                tasks.add(task);
+            }
+        }
+        for (Runnable r : tasks) {
+            ((WheelTask<?>) r).cancel(false);
+        }
+        synchronized (unprocessed) {
+            unprocessed.addAll(tasks);
+        }
+    }
+
+    /**
+     ****************************************
+     * doubly linked task list of a tick.(tick thread only)
+     ****************************************
+     */
+    private final class Bucket {
+        private WheelTask<?> head;
+        private WheelTask<?> tail;
+
+        void add(WheelTask<?> task) {
+            task.bucket = this;
+            if (head == null) {
+                head = tail = task;
+            } else {
+                tail.next = task;
+                task.prev = tail;
+                tail = task;
+            }
+        }
+
+        void remove(WheelTask<?> task) {
+            WheelTask<?> next = task.next;
+            if (task.prev != null) {
+                task.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = task.prev;
+            }
+            if (task == head) {
+                head = next;
+            }
+            if (task == tail) {
+                tail = task.prev;
+            }
+            task.prev = null;
+            task.next = null;
+            task.bucket = null;
+        }
+
+        void expire(long deadline) {
+            WheelTask<?> task = head;
+            while (task != null) {
+                WheelTask<?> next = task.next;
+                if (task.isCancelled()) {
+                    remove(task);
+                } else if (task.remainingRounds <= 0) {
+                    remove(task);
+                    dispatch(task);
+                } else {
+                    task.remainingRounds--;
+                }
+                task = next;
+            }
+        }
+
+        void clear(List<Runnable> tasks) {
+            WheelTask<?> task = head;
+            while (task != null) {
+                WheelTask<?> next = task.next;
+                remove(task);
+                if (!task.isCancelled()) {
+                    tasks.add(task);
+                }
+                task = next;
+            }
+        }
+    }
+
+    /**
+     ****************************************
+     * scheduled task.
+     * @param <V> result type
+     ****************************************
+     */
+    private final class WheelTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        /** run time(ns from timer start) */
+        private volatile long deadline;
+        /** 0: one-shot, plus: fixed rate, minus: fixed delay */
+        private final long period;
+
+        // tick thread only
+        private long remainingRounds;
+        private WheelTask<?> prev;
+        private WheelTask<?> next;
+        private Bucket bucket;
+
+        WheelTask(Callable<V> callable, long deadline, long period) {
+            super(callable);
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - now(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            if (o == this) {
+                return 0;
+            }
+            long diff = getDelay(TimeUnit.NANOSECONDS) - o.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (runAndReset()) {
+                // reschedule
+                deadline = period > 0 ? deadline + period : now() - period;
+                if (state == RUNNING) {
+                    pendingTasks.add(this);
+                } else {
+                    cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && state == RUNNING) {
+                // unlink on next tick
+                cancelledTasks.add(this);
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ ************************************************
+ * int value process callback.
+ * <br>
+ * same as {@link AsyncProc.ExecuteFunc}, but values are not boxed.
+ * @author f.kinoshita
+ ************************************************
+ */
+public abstract class IntExecuteFunc {
+
+    /** logger */
+    protected Logger logger = LoggerFactory.getLogger(getClass());
+
+    /** target channel */
+    private PrimitiveChannel.OfInt channel;
+
+    /**
+     **********************************
+     * execute action impl.
+     * @throws Exception exception in execute
+     **********************************
+     */
+    public abstract void execute() throws Exception;
+
+    /**
+     **********************************
+     * internal use only.
+     * @param channel result channel
+     **********************************
+     */
+    final void accept(PrimitiveChannel.OfInt channel) {
+        this.channel = channel;
+    }
+
+    /**
+     **********************************
+     * emit single value.
+     * @param value value
+     **********************************
+     */
+    protected final void append(int value) {
+        channel.offer(value);
+    }
+
+    /**
+     **********************************
+     * emit values.
+     * @param values values
+     **********************************
+     */
+    protected final void appendAll(int[] values) {
+        appendAll(values, 0, values.length);
+    }
+
+    /**
+     **********************************
+     * emit values.
+     * <br>
+     * values are copied in chunks as large as the free buffer space,
+     * blocking only when the buffer is full.
+     * @param values values
+     * @param off start offset in values
+     * @param len number of values to emit
+     **********************************
+     */
+    protected final void appendAll(int[] values, int off, int len) {
+        if (off < 0 || len < 0 || off > values.length - len) {
+            throw new IndexOutOfBoundsException("off=" + off + ", len=" + len + ", length=" + values.length);
+        }
+        channel.write(values, off, len);
+    }
+}
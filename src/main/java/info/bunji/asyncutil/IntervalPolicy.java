@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+/**
+ ************************************************
+ * scheduling policy of {@link AsyncIntervalProcess}.
+ * @author f.kinoshita
+ ************************************************
+ */
+public enum IntervalPolicy {
+
+    /**
+     * run at start + n * interval.
+     * after a slow interval, missed runs are executed back to back.(default)
+     */
+    FIXED_RATE,
+
+    /**
+     * run interval after the previous run finished.
+     */
+    FIXED_DELAY,
+
+    /**
+     * run at start + n * interval.
+     * after a slow interval, missed runs are skipped.
+     */
+    SKIP_MISSED,
+
+    /**
+     * run after the current interval from the previous run finished.
+     * the current interval is doubled when the run appended nothing(up to max interval),
+     * and halved when the run appended values(down to interval).
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+/**
+ ************************************************
+ * scheduling statistics of {@link AsyncIntervalProcess}.
+ * <br>
+ * updated by the interval task, readable from any thread.
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class IntervalStats {
+
+    // written by the interval task only(runs are never concurrent)
+    private volatile long runCount = 0;
+    private volatile long totalDriftNanos = 0;
+    private volatile long maxDriftNanos = 0;
+    private volatile long overrunCount = 0;
+    private volatile long totalOverrunNanos = 0;
+    private volatile long skippedCount = 0;
+    private volatile long currentIntervalNanos;
+
+    IntervalStats(long intervalNanos) {
+        this.currentIntervalNanos = intervalNanos;
+    }
+
+    void run(long driftNanos) {
+        runCount++;
+        totalDriftNanos += driftNanos;
+        if (driftNanos > maxDriftNanos) {
+            maxDriftNanos = driftNanos;
+        }
+    }
+
+    void overrun(long nanos) {
+        overrunCount++;
+        totalOverrunNanos += nanos;
+    }
+
+    void skipped(long count) {
+        skippedCount += count;
+    }
+
+    void setCurrentInterval(long nanos) {
+        currentIntervalNanos = nanos;
+    }
+
+    /**
+     **********************************
+     * get number of executeInterval() calls.
+     * @return run count
+     **********************************
+     */
+    public long getRunCount() {
+        return runCount;
+    }
+
+    /**
+     **********************************
+     * get total delay of the runs from their scheduled time.
+     * @return total drift(ns)
+     **********************************
+     */
+    public long getTotalDriftNanos() {
+        return totalDriftNanos;
+    }
+
+    /**
+     **********************************
+     * get max delay of a run from its scheduled time.
+     * @return max drift(ns)
+     **********************************
+     */
+    public long getMaxDriftNanos() {
+        return maxDriftNanos;
+    }
+
+    /**
+     **********************************
+     * get number of runs that took longer than the interval.
+     * @return overrun count
+     **********************************
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     **********************************
+     * get total time the runs exceeded the interval.
+     * @return total overrun(ns)
+     **********************************
+     */
+    public long getTotalOverrunNanos() {
+        return totalOverrunNanos;
+    }
+
+    /**
+     **********************************
+     * get number of skipped runs.({@link IntervalPolicy#SKIP_MISSED} only)
+     * @return skipped count
+     **********************************
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     **********************************
+     * get current interval.(changes with {@link IntervalPolicy#ADAPTIVE} only)
+     * @return current interval(ns)
+     **********************************
+     */
+    public long getCurrentIntervalNanos() {
+        return currentIntervalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IntervalStats: runs=%d/totalDrift=%dns/maxDrift=%dns"
+                                        + "/overruns=%d/totalOverrun=%dns/skipped=%d/interval=%dns",
+                                        getRunCount(),
+                                        getTotalDriftNanos(),
+                                        getMaxDriftNanos(),
+                                        getOverrunCount(),
+                                        getTotalOverrunNanos(),
+                                        getSkippedCount(),
+                                        getCurrentIntervalNanos());
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ ************************************************
+ * Java Flight Recorder events.
+ *
+ * <p>events:
+ * <ul>
+ * <li>{@code info.bunji.asyncutil.ProcessStart} process started</li>
+ * <li>{@code info.bunji.asyncutil.ProcessEnd} process finished or disposed(with ExecResult fields)</li>
+ * <li>{@code info.bunji.asyncutil.ProducerBlocked} append() waited for a request(threshold 10 ms)</li>
+ * <li>{@code info.bunji.asyncutil.ConsumerBlocked} hasNext() waited for a value(threshold 10 ms)</li>
+ * <li>{@code info.bunji.asyncutil.ResultClose} ClosableResult closed</li>
+ * </ul>
+ * if the runtime has no JFR, every method does nothing.
+ * the event classes are loaded only when JFR is available.
+ * @author f.kinoshita
+ ************************************************
+ */
+final class JfrEvents {
+
+    private static final boolean AVAILABLE;
+
+    static {
+        boolean available = false;
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrEvents.class.getClassLoader());
+            available = true;
+        } catch (Throwable t) {
+            // JFR not supported.
+        }
+        AVAILABLE = available;
+    }
+
+    private JfrEvents() {
+        // do nothing.
+    }
+
+    static void processStart(FlowMetrics metrics) {
+        if (AVAILABLE) {
+            Recorder.processStart(metrics);
+        }
+    }
+
+    static void processEnd(FlowMetrics metrics, ExecResult result, boolean cancelled) {
+        if (AVAILABLE) {
+            Recorder.processEnd(metrics, result, cancelled);
+        }
+    }
+
+    /**
+     **********************************
+     * begin producer blocked interval.
+     * @return event(pass to {@link #producerBlocked(Object, FlowMetrics)}). null if not recording
+     **********************************
+     */
+    static Object beginProducerBlocked() {
+        return AVAILABLE ? Recorder.beginProducerBlocked() : null;
+    }
+
+    static void producerBlocked(Object event, FlowMetrics metrics) {
+        if (event != null) {
+            Recorder.producerBlocked(event, metrics);
+        }
+    }
+
+    /**
+     **********************************
+     * begin consumer blocked interval.
+     * @return event(pass to {@link #consumerBlocked(Object, FlowMetrics)}). null if not recording
+     **********************************
+     */
+    static Object beginConsumerBlocked() {
+        return AVAILABLE ? Recorder.beginConsumerBlocked() : null;
+    }
+
+    static void consumerBlocked(Object event, FlowMetrics metrics) {
+        if (event != null) {
+            Recorder.consumerBlocked(event, metrics);
+        }
+    }
+
+    static void resultClose(FlowMetrics metrics) {
+        if (AVAILABLE) {
+            Recorder.resultClose(metrics);
+        }
+    }
+
+    /*
+     * references to the event classes.(loaded only if JFR is available)
+     */
+    private static final class Recorder {
+
+        private static final ProcessStartEvent PROCESS_START = new ProcessStartEvent();
+        private static final ProcessEndEvent PROCESS_END = new ProcessEndEvent();
+        private static final ProducerBlockedEvent PRODUCER_BLOCKED = new ProducerBlockedEvent();
+        private static final ConsumerBlockedEvent CONSUMER_BLOCKED = new ConsumerBlockedEvent();
+        private static final ResultCloseEvent RESULT_CLOSE = new ResultCloseEvent();
+
+        static void processStart(FlowMetrics metrics) {
+            if (PROCESS_START.isEnabled()) {
+                ProcessStartEvent e = new ProcessStartEvent();
+                e.processName = metrics.getProcessName();
+                e.processId = metrics.getProcessId();
+                e.commit();
+            }
+        }
+
+        static void processEnd(FlowMetrics metrics, ExecResult result, boolean cancelled) {
+            if (PROCESS_END.isEnabled()) {
+                ProcessEndEvent e = new ProcessEndEvent();
+                e.processName = metrics.getProcessName();
+                e.processId = metrics.getProcessId();
+                e.success = result.isSuccess();
+                e.cancelled = cancelled;
+                e.processed = result.getProcessed();
+                e.execTime = result.getExecTime();
+                e.exception = result.getException() != null ? result.getException().toString() : null;
+                e.producerWait = result.getProducerWaitNanos();
+                e.consumerWait = result.getConsumerWaitNanos();
+                e.bufferHighWater = result.getBufferHighWater();
+                e.requestCount = result.getRequestCount();
+                e.commit();
+            }
+        }
+
+        static Object beginProducerBlocked() {
+            if (PRODUCER_BLOCKED.isEnabled()) {
+                ProducerBlockedEvent e = new ProducerBlockedEvent();
+                e.begin();
+                return e;
+            }
+            return null;
+        }
+
+        static void producerBlocked(Object event, FlowMetrics metrics) {
+            ProducerBlockedEvent e = (ProducerBlockedEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.processName = metrics.getProcessName();
+                e.processId = metrics.getProcessId();
+                e.commit();
+            }
+        }
+
+        static Object beginConsumerBlocked() {
+            if (CONSUMER_BLOCKED.isEnabled()) {
+                ConsumerBlockedEvent e = new ConsumerBlockedEvent();
+                e.begin();
+                return e;
+            }
+            return null;
+        }
+
+        static void consumerBlocked(Object event, FlowMetrics metrics) {
+            ConsumerBlockedEvent e = (ConsumerBlockedEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                if (metrics != null) {
+                    e.processName = metrics.getProcessName();
+                    e.processId = metrics.getProcessId();
+                }
+                e.commit();
+            }
+        }
+
+        static void resultClose(FlowMetrics metrics) {
+            if (RESULT_CLOSE.isEnabled()) {
+                ResultCloseEvent e = new ResultCloseEvent();
+                if (metrics != null) {
+                    e.processName = metrics.getProcessName();
+                    e.processId = metrics.getProcessId();
+                }
+                e.commit();
+            }
+        }
+    }
+
+    @Name("info.bunji.asyncutil.ProcessStart")
+    @Label("Process Start")
+    @Category("asyncutil")
+    @Description("AsyncProc started executing.")
+    @StackTrace(false)
+    static final class ProcessStartEvent extends Event {
+        @Label("Process Name")
+        String processName;
+
+        @Label("Process Id")
+        int processId;
+    }
+
+    @Name("info.bunji.asyncutil.ProcessEnd")
+    @Label("Process End")
+    @Category("asyncutil")
+    @Description("AsyncProc finished or was disposed.")
+    @StackTrace(false)
+    static final class ProcessEndEvent extends Event {
+        @Label("Process Name")
+        String processName;
+
+        @Label("Process Id")
+        int processId;
+
+        @Label("Success")
+        boolean success;
+
+        @Label("Cancelled")
+        @Description("disposed before the process finished")
+        boolean cancelled;
+
+        @Label("Processed")
+        long processed;
+
+        @Label("Execute Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long execTime;
+
+        @Label("Exception")
+        String exception;
+
+        @Label("Producer Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long producerWait;
+
+        @Label("Consumer Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long consumerWait;
+
+        @Label("Buffer High Water")
+        long bufferHighWater;
+
+        @Label("Request Count")
+        long requestCount;
+    }
+
+    @Name("info.bunji.asyncutil.ProducerBlocked")
+    @Label("Producer Blocked")
+    @Category("asyncutil")
+    @Description("append() waited for a request from the consumer.")
+    @Threshold("10 ms")
+    static final class ProducerBlockedEvent extends Event {
+        @Label("Process Name")
+        String processName;
+
+        @Label("Process Id")
+        int processId;
+    }
+
+    @Name("info.bunji.asyncutil.ConsumerBlocked")
+    @Label("Consumer Blocked")
+    @Category("asyncutil")
+    @Description("hasNext() waited for a value from the process.")
+    @Threshold("10 ms")
+    static final class ConsumerBlockedEvent extends Event {
+        @Label("Process Name")
+        String processName;
+
+        @Label("Process Id")
+        int processId;
+    }
+
+    @Name("info.bunji.asyncutil.ResultClose")
+    @Label("Result Close")
+    @Category("asyncutil")
+    @Description("ClosableResult was closed.")
+    static final class ResultCloseEvent extends Event {
+        @Label("Process Name")
+        String processName;
+
+        @Label("Process Id")
+        int processId;
+    }
+}
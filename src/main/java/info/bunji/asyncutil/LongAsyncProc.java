@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import info.bunji.asyncutil.functions.FlowMetricsListener;
+import info.bunji.asyncutil.functions.PostFunc;
+import io.reactivex.functions.Action;
+
+/**
+ ************************************************
+ * long value async process class.
+ * <br>
+ * values are passed through a primitive ring buffer without boxing.
+ * <pre>
+ * {@code
+ * try (LongClosableResult cr = new LongAsyncProc(func).run()) {
+ *   PrimitiveIterator.OfLong it = cr.iterator();
+ *   while (it.hasNext()) {
+ *     long val = it.nextLong();
+ *   }
+ * }
+ * }
+ * </pre>
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class LongAsyncProc {
+
+    private final LongExecuteFunc execFunc;
+
+    private PostFunc postFunc = EMPTY_POST_FUNC;
+
+    private FlowMetricsListener listener = null;
+
+    private static final PostFunc EMPTY_POST_FUNC = new PostFunc() {
+        @Override
+        public void execute(ExecResult result) {
+            // do nothing.
+        }
+    };
+
+    public LongAsyncProc(LongExecuteFunc callback) {
+        if (callback == null) {
+            throw new IllegalArgumentException("ExecuteAction can not null.");
+        }
+        this.execFunc = callback;
+    }
+
+    /**
+     **********************************
+     * set process finished callback.
+     * @param callback process finished callback
+     * @return this instance
+     **********************************
+     */
+    public LongAsyncProc setPostFunc(PostFunc callback) {
+        postFunc = callback != null ? callback : EMPTY_POST_FUNC;
+        return this;
+    }
+
+    /**
+     **********************************
+     * set flow control event listener.
+     * @param listener listener. if null, remove listener
+     * @return this instance
+     **********************************
+     */
+    public LongAsyncProc setMetricsListener(FlowMetricsListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * @return async process result
+     **********************************
+     */
+    public LongClosableResult run() {
+        return run(new RunOptions());
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * @param bufSize append buffer size
+     * @return async process result
+     **********************************
+     */
+    public LongClosableResult run(int bufSize) {
+        return run(new RunOptions().setBufSize(bufSize));
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * @param bufSize append buffer size
+     * @param isDelayError if true, the exception is delayed until all added data is read.
+     *                     if false, immediately raise an exception.
+     * @return async process result
+     **********************************
+     */
+    public LongClosableResult run(int bufSize, boolean isDelayError) {
+        return run(new RunOptions().setBufSize(bufSize).setDelayError(isDelayError));
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * <br>
+     * the direct option is not used.(always direct)
+     * @param options execute options
+     * @return async process result
+     **********************************
+     */
+    public LongClosableResult run(RunOptions options) {
+        FlowMetrics metrics = new FlowMetrics();
+        metrics.setProcess(execFunc.getClass().getName(), System.identityHashCode(this));
+        metrics.setListener(listener);
+
+        PrimitiveChannel.OfLong channel = new PrimitiveChannel.OfLong(options.getBufSize(),
+                                                options.isDelayError(), metrics, postFunc);
+        execFunc.accept(channel);
+        channel.start(options.getScheduler(), new Action() {
+            @Override
+            public void run() throws Exception {
+                execFunc.execute();
+            }
+        });
+        return new LongClosableResult(channel, options.getCloseMode());
+    }
+}
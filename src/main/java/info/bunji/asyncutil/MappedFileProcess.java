@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.reactivex.functions.Function;
+
+/**
+ ************************************************
+ * memory-mapped record file process.
+ *
+ * <p>maps the file in windows and emits each record as a read-only
+ * {@link ByteBuffer} slice of the mapping, or as a value decoded from it.
+ * records are not copied.<br>
+ * usage:
+ * <pre>
+ * {@code
+ * try (ClosableResult<ByteBuffer> cr = MappedFileProcess.of(path, Framing.LINES).run()) {
+ *   for (ByteBuffer line : cr) {
+ *     // process record.
+ *   }
+ * }
+ * }
+ * </pre>
+ * a window is remapped from the first incomplete record, and grows when a
+ * single record does not fit in it(back to the window size after the record
+ * is emitted). the mapping is released by GC after all
+ * slices of it become unreachable, so keep a slice only while it is needed.
+ * @param <T> result type
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class MappedFileProcess<T> extends AsyncProcess<T> {
+
+    /** default window size(64MB) */
+    static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     **********************************
+     * record framing.
+     **********************************
+     */
+    public enum Framing {
+        /** newline delimited(a trailing CR is removed) */
+        LINES,
+        /** 4 byte big-endian length prefixed */
+        LENGTH_PREFIXED
+    }
+
+    private final Path file;
+
+    private final Framing framing;
+
+    private final Function<? super ByteBuffer, ? extends T> decoder;
+
+    private long windowSize = DEFAULT_WINDOW_SIZE;
+
+    /** size of the current mapping window(written by the process thread) */
+    private volatile long window = DEFAULT_WINDOW_SIZE;
+
+    private MappedFileProcess(Path file, Framing framing, Function<? super ByteBuffer, ? extends T> decoder) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not null.");
+        }
+        if (framing == null) {
+            throw new IllegalArgumentException("framing can not null.");
+        }
+        if (decoder == null) {
+            throw new IllegalArgumentException("decoder can not null.");
+        }
+        this.file = file;
+        this.framing = framing;
+        this.decoder = decoder;
+    }
+
+    /**
+     **********************************
+     * create process that emits record slices.
+     * @param file record file
+     * @param framing record framing
+     * @return process
+     **********************************
+     */
+    public static MappedFileProcess<ByteBuffer> of(Path file, Framing framing) {
+        return new MappedFileProcess<ByteBuffer>(file, framing, new Function<ByteBuffer, ByteBuffer>() {
+            @Override
+            public ByteBuffer apply(ByteBuffer record) {
+                return record;
+            }
+        });
+    }
+
+    /**
+     **********************************
+     * create process that emits decoded records.
+     * <br>
+     * the decoder is called on the process thread.
+     * @param file record file
+     * @param framing record framing
+     * @param decoder record decoder
+     * @param <T> result type
+     * @return process
+     **********************************
+     */
+    public static <T> MappedFileProcess<T> of(Path file, Framing framing, Function<? super ByteBuffer, ? extends T> decoder) {
+        return new MappedFileProcess<T>(file, framing, decoder);
+    }
+
+    /**
+     **********************************
+     * set mapping window size.
+     * @param windowSize window size in bytes(default 64MB)
+     * @return this instance
+     **********************************
+     */
+    public MappedFileProcess<T> setWindowSize(long windowSize) {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("windowSize is between 1 and " + Integer.MAX_VALUE + ".");
+        }
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long pos = 0;
+            window = windowSize;
+            while (pos < size) {
+                long len = Math.min(window, size - pos);
+                boolean eof = pos + len == size;
+                ByteBuffer buf = ch.map(MapMode.READ_ONLY, pos, len);
+                int read = framing == Framing.LINES ? emitLines(buf, eof) : emitLengthPrefixed(buf, eof, pos);
+                if (read == 0) {
+                    // record larger than window
+                    if (window >= Integer.MAX_VALUE) {
+                        throw new IOException("record too large. [offset=" + pos + "]");
+                    }
+                    window = Math.min(window << 1, Integer.MAX_VALUE);
+                } else {
+                    // do not keep a large mapping after the record
+                    window = windowSize;
+                }
+                pos += read;
+            }
+        }
+    }
+
+    long getWindow() {
+        return window;
+    }
+
+    // emit newline delimited records, return consumed bytes
+    private int emitLines(ByteBuffer buf, boolean eof) throws Exception {
+        int limit = buf.limit();
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buf.get(i) == '\n') {
+                emit(buf, start, trimCR(buf, start, i));
+                start = i + 1;
+            }
+        }
+        if (eof && start < limit) {
+            // last line without newline
+            emit(buf, start, trimCR(buf, start, limit));
+            start = limit;
+        }
+        return start;
+    }
+
+    private static int trimCR(ByteBuffer buf, int start, int end) {
+        return end > start && buf.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    // emit length prefixed records, return consumed bytes
+    private int emitLengthPrefixed(ByteBuffer buf, boolean eof, long base) throws Exception {
+        int limit = buf.limit();
+        int p = 0;
+        while (limit - p >= 4) {
+            int n = buf.getInt(p);
+            if (n < 0) {
+                throw new IOException("invalid record length. [offset=" + (base + p) + ", length=" + n + "]");
+            }
+            if (limit - p - 4 < n) {
+                break;
+            }
+            emit(buf, p + 4, p + 4 + n);
+            p += 4 + n;
+        }
+        if (eof && p < limit) {
+            throw new IOException("truncated record. [offset=" + (base + p) + "]");
+        }
+        return p;
+    }
+
+    private void emit(ByteBuffer buf, int start, int end) throws Exception {
+        ByteBuffer record = buf.duplicate();
+        // call Buffer methods(java 8 compatible)
+        ((Buffer) record).limit(end);
+        ((Buffer) record).position(start);
+        append(decoder.apply(record.slice()));
+    }
+}
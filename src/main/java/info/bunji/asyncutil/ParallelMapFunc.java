@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
+import io.reactivex.functions.Function;
+
+/**
+ ************************************************
+ * order-preserving parallel map process.
+ * <br>
+ * reads the source result, applies the function on the executor and
+ * emits the results in source order. at most {@code window} values are
+ * in flight at once, and at most {@code concurrency} of them are mapped
+ * at once(no dedicated threads are created).
+ * @author f.kinoshita
+ * @param <T> source element type
+ * @param <R> result element type
+ ************************************************
+ */
+final class ParallelMapFunc<T, R> extends ExecuteFunc<R> {
+
+    private final ClosableResult<T> source;
+
+    private final Function<? super T, ? extends R> fn;
+
+    private final int concurrency;
+
+    private final int window;
+
+    private final Executor executor;
+
+    /** tasks waiting for a worker */
+    private final Queue<FutureTask<R>> pending = new ConcurrentLinkedQueue<>();
+
+    /** running worker count */
+    private final AtomicInteger running = new AtomicInteger(0);
+
+    /**
+     **********************************
+     * @param source source result
+     * @param fn map function
+     * @param concurrency max concurrent map count
+     * @param window max in-flight values
+     * @param executor executor for map function
+     **********************************
+     */
+    ParallelMapFunc(ClosableResult<T> source, Function<? super T, ? extends R> fn, int concurrency, int window,
+                                                Executor executor) {
+        if (fn == null) {
+            throw new IllegalArgumentException("map function can not null.");
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency is greater than 0.");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window is greater than 0.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor can not null.");
+        }
+        this.source = source;
+        this.fn = fn;
+        this.concurrency = Math.min(concurrency, window);
+        this.window = window;
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute() throws Exception {
+        Deque<Future<R>> inFlight = new ArrayDeque<>(window);
+        try {
+            Iterator<T> it = source.iterator();
+            while (it.hasNext()) {
+                if (inFlight.size() >= window) {
+                    append(take(inFlight.poll()));
+                }
+                FutureTask<R> task = new FutureTask<>(new MapTask(it.next()));
+                inFlight.add(task);
+                pending.add(task);
+                dispatch();
+
+                // emit finished values without waiting
+                while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+                    append(take(inFlight.poll()));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                append(take(inFlight.poll()));
+            }
+        } finally {
+            for (Future<R> f : inFlight) {
+                f.cancel(true);
+            }
+            pending.clear();
+            source.close();
+        }
+    }
+
+    // start workers up to concurrency
+    private void dispatch() {
+        for (;;) {
+            int r = running.get();
+            if (r >= concurrency || pending.isEmpty()) {
+                return;
+            }
+            if (running.compareAndSet(r, r + 1)) {
+                try {
+                    executor.execute(new Worker());
+                } catch (RuntimeException e) {
+                    running.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private R take(Future<R> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw ee;
+        }
+    }
+
+    /**
+     ********************************************
+     * run pending tasks until the queue is empty.
+     ********************************************
+     */
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                FutureTask<R> task;
+                while ((task = pending.poll()) != null) {
+                    task.run();
+                }
+            } finally {
+                running.decrementAndGet();
+            }
+            // task added while exiting
+            dispatch();
+        }
+    }
+
+    private final class MapTask implements Callable<R> {
+        private final T value;
+
+        MapTask(T value) {
+            this.value = value;
+        }
+
+        @Override
+        public R call() throws Exception {
+            return fn.apply(value);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
+import info.bunji.asyncutil.functions.FlowMetricsListener;
+import info.bunji.asyncutil.functions.PostFunc;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Function;
+
+/**
+ ************************************************
+ * partitioned parallel process class.
+ *
+ * <p>runs each partition's {@link ExecuteFunc} concurrently and merges
+ * the results into one {@link ClosableResult}.<br>
+ * usage:
+ * <pre>
+ * {@code
+ * ParallelProc<String> proc = new ParallelProc<String>()
+ *                                  .addPartition(new ScanFunc("a", "m"))
+ *                                  .addPartition(new ScanFunc("m", "z"))
+ *                                  .setConcurrency(4);
+ * try (ClosableResult<String> cr = proc.run()) {
+ *   for (String r : cr) {
+ *     // process result.
+ *   }
+ * }
+ * }
+ * </pre>
+ * by default the results are emitted in arrival order.
+ * if {@link #setOrdered(boolean)} is true, all results of a partition
+ * are emitted before the results of the next partition.
+ * (later partitions still run ahead and buffer up to bufSize values)
+ *
+ * <p>{@code close()} or an exception in a partition(without delayError)
+ * cancels every running partition. the post function receives one
+ * {@link ExecResult} aggregated from all partitions.
+ * @param <T> result type
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class ParallelProc<T> {
+
+    /** logger */
+    protected Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<ExecuteFunc<T>> partitions = new ArrayList<>();
+
+    private boolean ordered = false;
+
+    private int concurrency = Runtime.getRuntime().availableProcessors();
+
+    private PostFunc postFunc = null;
+
+    private FlowMetricsListener listener = null;
+
+    public ParallelProc() {
+    }
+
+    public ParallelProc(Collection<? extends ExecuteFunc<T>> partitions) {
+        this();
+        for (ExecuteFunc<T> partition : partitions) {
+            addPartition(partition);
+        }
+    }
+
+    /**
+     **********************************
+     * add partition process.
+     * @param partition execute callback of the partition
+     * @return this instance
+     **********************************
+     */
+    public ParallelProc<T> addPartition(ExecuteFunc<T> partition) {
+        if (partition == null) {
+            throw new IllegalArgumentException("ExecuteAction can not null.");
+        }
+        partitions.add(partition);
+        return this;
+    }
+
+    /**
+     **********************************
+     * set partition ordered merge.
+     * @param ordered if true, emit results in partition order.
+     *                if false, emit results in arrival order.(default)
+     * @return this instance
+     **********************************
+     */
+    public ParallelProc<T> setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     **********************************
+     * set max number of partitions executed at the same time.
+     * @param concurrency max running partitions(default available processors)
+     * @return this instance
+     **********************************
+     */
+    public ParallelProc<T> setConcurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency is greater than 0.");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     **********************************
+     * set process finished callback.
+     * <br>
+     * called once, after all partitions finished or cancelled.
+     * @param callback process finished callback
+     * @return this instance
+     **********************************
+     */
+    public ParallelProc<T> setPostFunc(PostFunc callback) {
+        this.postFunc = callback;
+        return this;
+    }
+
+    /**
+     **********************************
+     * set flow control event listener.
+     * <br>
+     * events of all partitions are notified from multiple threads.
+     * @param listener listener. if null, remove listener
+     * @return this instance
+     **********************************
+     */
+    public ParallelProc<T> setMetricsListener(FlowMetricsListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * @return async process result
+     **********************************
+     */
+    public ClosableResult<T> run() {
+        return run(new RunOptions());
+    }
+
+    /**
+     **********************************
+     * execute process.
+     * <br>
+     * each partition buffers up to bufSize values.
+     * partitions are executed on the scheduler, and the direct option is not used.
+     * @param options execute options
+     * @return async process result
+     **********************************
+     */
+    public ClosableResult<T> run(RunOptions options) {
+        if (partitions.isEmpty()) {
+            throw new IllegalStateException("no partition.");
+        }
+        final Scheduler scheduler = options.getScheduler();
+        final boolean delayError = options.isDelayError();
+        final int prefetch = options.getBufSize();
+
+        final FlowMetrics metrics = new FlowMetrics();
+        metrics.setProcess(getClass().getName(), System.identityHashCode(this));
+        metrics.setListener(listener);
+
+        // forward partition events to merged counters
+        FlowMetricsListener forwarder = new FlowMetricsListener() {
+            @Override
+            public void onRequest(long n) {
+                metrics.requested(n);
+            }
+
+            @Override
+            public void onProducerBlocked(long nanos) {
+                metrics.producerBlocked(nanos);
+            }
+
+            @Override
+            public void onFirstElement(long nanos) {
+                metrics.firstElement();
+            }
+        };
+
+        ResultCollector collector = new ResultCollector(partitions.size(), metrics, postFunc);
+        final List<AsyncProc<T>> procs = new ArrayList<>(partitions.size());
+        for (ExecuteFunc<T> partition : partitions) {
+            procs.add(new AsyncProc<T>(partition).setPostFunc(collector).setMetricsListener(forwarder));
+        }
+
+        Function<AsyncProc<T>, Publisher<T>> mapper = new Function<AsyncProc<T>, Publisher<T>>() {
+            @Override
+            public Publisher<T> apply(AsyncProc<T> proc) throws Exception {
+                // ExecuteFunc never emits more than requested.
+                return Flowable.create(proc, BackpressureStrategy.MISSING)
+                                .doOnRequest(proc.getExecFunc())
+                                .subscribeOn(scheduler, false);
+            }
+        };
+
+        Flowable<AsyncProc<T>> sources = Flowable.fromIterable(procs);
+        Flowable<T> merged;
+        if (!ordered) {
+            merged = sources.flatMap(mapper, delayError, concurrency, prefetch);
+        } else if (delayError) {
+            merged = sources.concatMapEagerDelayError(mapper, concurrency, prefetch, true);
+        } else {
+            merged = sources.concatMapEager(mapper, concurrency, prefetch);
+        }
+
+        merged = merged.doFinally(new Action() {
+            @Override
+            public void run() throws Exception {
+                // report partitions not yet started
+                for (AsyncProc<T> proc : procs) {
+                    if (!proc.isDisposed()) {
+                        proc.dispose();
+                    }
+                }
+            }
+        });
+
+        logger.trace("exec parallel : partitions={} / concurrency={} / ordered={}", procs.size(), concurrency, ordered);
+        metrics.start();
+        return new ClosableResult<>(merged, options, metrics);
+    }
+
+    /**
+     ********************************************
+     * aggregate partition results.
+     ********************************************
+     */
+    private static final class ResultCollector implements PostFunc {
+
+        private final AtomicInteger remain;
+
+        private final AtomicLong processed = new AtomicLong(0);
+
+        private final AtomicReference<Throwable> exception = new AtomicReference<>();
+
+        private final long startTime = System.currentTimeMillis();
+
+        private final FlowMetrics metrics;
+
+        private final PostFunc postFunc;
+
+        ResultCollector(int partitions, FlowMetrics metrics, PostFunc postFunc) {
+            this.remain = new AtomicInteger(partitions);
+            this.metrics = metrics;
+            this.postFunc = postFunc;
+        }
+
+        @Override
+        public void execute(ExecResult result) {
+            processed.addAndGet(result.getProcessed());
+            if (result.getException() != null) {
+                exception.compareAndSet(null, result.getException());
+            }
+            if (remain.decrementAndGet() == 0 && postFunc != null) {
+                long execTime = System.currentTimeMillis() - startTime;
+                postFunc.execute(new ExecResult(processed.get(), execTime, exception.get(), metrics));
+            }
+        }
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.bunji.asyncutil.functions.PostFunc;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Action;
+import io.reactivex.internal.util.ExceptionHelper;
+
+/**
+ ************************************************
+ * single-producer/single-consumer primitive ring buffer for one process run.
+ * <br>
+ * the process thread blocks while the ring is full, and the consumer thread
+ * blocks while the ring is empty. values are never boxed.
+ * subclasses hold the typed array.
+ * @author f.kinoshita
+ ************************************************
+ */
+abstract class PrimitiveChannel implements Disposable {
+
+    /** logger */
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /** typed ring array */
+    private final Object array;
+    protected final int capacity;
+    protected final int mask;
+    private final boolean delayError;
+    private final FlowMetrics metrics;
+    private final PostFunc postFunc;
+
+    /** next write index(written by producer only) */
+    protected volatile long producerIndex;
+    /** next read index(written by consumer only) */
+    protected volatile long consumerIndex;
+    /** parked producer thread */
+    private volatile Thread producerWaiter;
+    /** parked consumer thread */
+    private volatile Thread consumerWaiter;
+
+    private volatile boolean done = false;
+    private volatile Throwable error = null;
+    private volatile boolean finished = false;
+    private final AtomicBoolean isDisposed = new AtomicBoolean(false);
+    private long startTime = System.currentTimeMillis();
+    /** true after first value emitted */
+    private final AtomicBoolean emitted = new AtomicBoolean(false);
+
+    /** thread running the process(guarded by runnerLock) */
+    private Thread runner = null;
+    /** true if runner was interrupted by dispose(guarded by runnerLock) */
+    private boolean interrupted = false;
+    /** dispose time in nanos. -1 if not running at dispose(guarded by runnerLock) */
+    private long closeNanos = -1;
+    private final Object runnerLock = new Object();
+    /** completed when the process thread is released */
+    private final CompletableFuture<ExecResult> released = new CompletableFuture<>();
+
+    /**
+     **********************************
+     * @param array typed ring array
+     * @param capacity array length(power of two)
+     * @param delayError if true, the exception is delayed until all added data is read.
+     * @param metrics flow control counters
+     * @param postFunc process finished callback
+     **********************************
+     */
+    PrimitiveChannel(Object array, int capacity, boolean delayError, FlowMetrics metrics, PostFunc postFunc) {
+        this.array = array;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.delayError = delayError;
+        this.metrics = metrics;
+        this.postFunc = postFunc;
+    }
+
+    static int roundToPowerOfTwo(int value) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(Math.max(value, 1) - 1));
+    }
+
+    /**
+     **********************************
+     * execute process on scheduler.
+     * @param scheduler scheduler
+     * @param body process body
+     **********************************
+     */
+    final void start(Scheduler scheduler, final Action body) {
+        startTime = System.currentTimeMillis();
+        metrics.start();
+        JfrEvents.processStart(metrics);
+        scheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (runnerLock) {
+                    runner = Thread.currentThread();
+                }
+                Throwable t = null;
+                try {
+                    if (!isDisposed()) {
+                        body.run();
+                    }
+                } catch (Throwable e) {
+                    t = e;
+                }
+                finish(t);
+                exitRunner();
+            }
+        });
+    }
+
+    // clear runner after the process returned
+    private void exitRunner() {
+        long start;
+        synchronized (runnerLock) {
+            runner = null;
+            if (interrupted) {
+                // do not leak the interrupt to the pooled thread
+                Thread.interrupted();
+            }
+            start = closeNanos;
+        }
+        long execTime = System.currentTimeMillis() - startTime;
+        released.complete(new ExecResult(producerIndex, execTime, error, metrics,
+                                            start != -1 ? System.nanoTime() - start : -1));
+    }
+
+    private void finish(Throwable t) {
+        finished = true;
+        if (t != null && !isDisposed()) {
+            logger.error("error occurred now. [{}]", t.toString());
+            error = t;
+        }
+        done = true;
+        signal(consumerWaiter);
+        dispose();
+    }
+
+    @Override
+    public final void dispose() {
+        dispose(ClosableResult.CloseMode.COOPERATIVE);
+    }
+
+    /**
+     **********************************
+     * dispose process.
+     * @param mode if ABORT, interrupt the thread running the process
+     **********************************
+     */
+    final void dispose(ClosableResult.CloseMode mode) {
+        if (!isDisposed.getAndSet(true)) {
+            synchronized (runnerLock) {
+                if (runner != null && !finished && runner != Thread.currentThread()) {
+                    closeNanos = System.nanoTime();
+                    if (mode == ClosableResult.CloseMode.ABORT) {
+                        // wake up the process blocked in I/O or sleep
+                        runner.interrupt();
+                        interrupted = true;
+                    }
+                }
+            }
+            // unlock append
+            signal(producerWaiter);
+
+            logger.trace("{}.dispose()", getClass().getSimpleName());
+            try {
+                long execTime = System.currentTimeMillis() - startTime;
+                ExecResult result = new ExecResult(producerIndex, execTime, error, metrics);
+                logger.trace(result.toString());
+                JfrEvents.processEnd(metrics, result, !finished);
+                postFunc.execute(result);
+            } catch (Exception e) {
+                logger.error("exception in postFunc. msg=[{}]", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public final boolean isDisposed() {
+        return isDisposed.get();
+    }
+
+    final FlowMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     **********************************
+     * get future completed when the process thread is released.
+     * @return future of the result with close latency
+     **********************************
+     */
+    final CompletableFuture<ExecResult> released() {
+        return released;
+    }
+
+    private static void signal(Thread t) {
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     **********************************
+     * wait for free slots(producer side).
+     * @param max max count
+     * @return free slot count(1 or more)
+     **********************************
+     */
+    protected final int claim(int max) {
+        for (;;) {
+            if (isDisposed()) {
+                logger.trace("interrupt append(). [process disposed]");
+                throw new IllegalStateException("process disposed.");
+            }
+            long free = capacity - (producerIndex - consumerIndex);
+            if (free > 0) {
+                if (!emitted.get() && emitted.compareAndSet(false, true)) {
+                    metrics.firstElement();
+                }
+                return (int) Math.min(free, max);
+            }
+
+            // wait for consumer
+            producerWaiter = Thread.currentThread();
+            if (!isDisposed() && producerIndex - consumerIndex >= capacity) {
+                Object jfrEvent = JfrEvents.beginProducerBlocked();
+                long waitStart = System.nanoTime();
+                LockSupport.park(this);
+                metrics.producerBlocked(System.nanoTime() - waitStart);
+                JfrEvents.producerBlocked(jfrEvent, metrics);
+            }
+            producerWaiter = null;
+            if (Thread.interrupted()) {
+                throw new RuntimeException(new InterruptedException());
+            }
+        }
+    }
+
+    /**
+     **********************************
+     * publish written values(producer side).
+     * @param index next write index
+     **********************************
+     */
+    protected final void publish(long index) {
+        producerIndex = index;
+        signal(consumerWaiter);
+        metrics.buffered(index - consumerIndex);
+    }
+
+    /**
+     **********************************
+     * write values(producer side).
+     * @param src typed source array
+     * @param off start offset in src
+     * @param len number of values
+     **********************************
+     */
+    final void write(Object src, int off, int len) {
+        int end = off + len;
+        while (off < end) {
+            int n = claim(end - off);
+            long p = producerIndex;
+            int offset = (int) p & mask;
+            int first = Math.min(n, capacity - offset);
+            System.arraycopy(src, off, array, offset, first);
+            if (first < n) {
+                System.arraycopy(src, off + first, array, 0, n - first);
+            }
+            off += n;
+            publish(p + n);
+        }
+    }
+
+    /**
+     **********************************
+     * wait for a value(consumer side).
+     * @return true if a value is available, false if the process finished
+     **********************************
+     */
+    protected final boolean await() {
+        for (;;) {
+            boolean d = done;
+            boolean isEmpty = producerIndex == consumerIndex;
+
+            if (d && (isEmpty || (!delayError && error != null))) {
+                Throwable e = error;
+                if (e != null) {
+                    // clear unread values
+                    consumerIndex = producerIndex;
+                    throw ExceptionHelper.wrapOrThrow(e);
+                }
+                return false;
+            }
+            if (!isEmpty) {
+                return true;
+            }
+
+            // wait for producer
+            consumerWaiter = Thread.currentThread();
+            if (!done && producerIndex == consumerIndex) {
+                Object jfrEvent = JfrEvents.beginConsumerBlocked();
+                long waitStart = System.nanoTime();
+                LockSupport.park(this);
+                metrics.consumerBlocked(System.nanoTime() - waitStart);
+                JfrEvents.consumerBlocked(jfrEvent, metrics);
+            }
+            consumerWaiter = null;
+            if (Thread.interrupted()) {
+                dispose();
+                throw ExceptionHelper.wrapOrThrow(new InterruptedException());
+            }
+        }
+    }
+
+    /**
+     **********************************
+     * release read values(consumer side).
+     * @param index next read index
+     **********************************
+     */
+    protected final void consumed(long index) {
+        consumerIndex = index;
+        signal(producerWaiter);
+    }
+
+    /**
+     **********************************
+     * read buffered values(consumer side).
+     * <br>
+     * blocks until at least one value is available.
+     * @param dst typed destination array
+     * @param off start offset in dst
+     * @param max max number of values
+     * @return read count. -1 if the process finished
+     **********************************
+     */
+    final int read(Object dst, int off, int max) {
+        if (!await()) {
+            return -1;
+        }
+        long c = consumerIndex;
+        int n = (int) Math.min(producerIndex - c, max);
+        int offset = (int) c & mask;
+        int first = Math.min(n, capacity - offset);
+        System.arraycopy(array, offset, dst, off, first);
+        if (first < n) {
+            System.arraycopy(array, 0, dst, off + first, n - first);
+        }
+        consumed(c + n);
+        return n;
+    }
+
+    /**
+     ****************************************
+     * long ring buffer.
+     ****************************************
+     */
+    static final class OfLong extends PrimitiveChannel {
+        private final long[] buffer;
+
+        OfLong(int bufSize, boolean delayError, FlowMetrics metrics, PostFunc postFunc) {
+            this(new long[roundToPowerOfTwo(bufSize)], delayError, metrics, postFunc);
+        }
+
+        private OfLong(long[] buffer, boolean delayError, FlowMetrics metrics, PostFunc postFunc) {
+            super(buffer, buffer.length, delayError, metrics, postFunc);
+            this.buffer = buffer;
+        }
+
+        void offer(long value) {
+            claim(1);
+            long p = producerIndex;
+            buffer[(int) p & mask] = value;
+            publish(p + 1);
+        }
+
+        long poll() {
+            if (!await()) {
+                throw new NoSuchElementException();
+            }
+            long c = consumerIndex;
+            long value = buffer[(int) c & mask];
+            consumed(c + 1);
+            return value;
+        }
+    }
+
+    /**
+     ****************************************
+     * int ring buffer.
+     ****************************************
+     */
+    static final class OfInt extends PrimitiveChannel {
+        private final int[] buffer;
+
+        OfInt(int bufSize, boolean delayError, FlowMetrics metrics, PostFunc postFunc) {
+            this(new int[roundToPowerOfTwo(bufSize)], delayError, metrics, postFunc);
+        }
+
+        private OfInt(int[] buffer, boolean delayError, FlowMetrics metrics, PostFunc postFunc) {
+            super(buffer, buffer.length, delayError, metrics, postFunc);
+            this.buffer = buffer;
+        }
+
+        void offer(int value) {
+            claim(1);
+            long p = producerIndex;
+            buffer[(int) p & mask] = value;
+            publish(p + 1);
+        }
+
+        int poll() {
+            if (!await()) {
+                throw new NoSuchElementException();
+            }
+            long c = consumerIndex;
+            int value = buffer[(int) c & mask];
+            consumed(c + 1);
+            return value;
+        }
+    }
+
+    /**
+     ****************************************
+     * double ring buffer.
+     ****************************************
+     */
+    static final class OfDouble extends PrimitiveChannel {
+        private final double[] buffer;
+
+        OfDouble(int bufSize, boolean delayError, FlowMetrics metrics, PostFunc postFunc) {
+            this(new double[roundToPowerOfTwo(bufSize)], delayError, metrics, postFunc);
+        }
+
+        private OfDouble(double[] buffer, boolean delayError, FlowMetrics metrics, PostFunc postFunc) {
+            super(buffer, buffer.length, delayError, metrics, postFunc);
+            this.buffer = buffer;
+        }
+
+        void offer(double value) {
+            claim(1);
+            long p = producerIndex;
+            buffer[(int) p & mask] = value;
+            publish(p + 1);
+        }
+
+        double poll() {
+            if (!await()) {
+                throw new NoSuchElementException();
+            }
+            long c = consumerIndex;
+            double value = buffer[(int) c & mask];
+            consumed(c + 1);
+            return value;
+        }
+    }
+}
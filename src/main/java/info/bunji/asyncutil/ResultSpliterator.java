@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ ************************************************
+ * spliterator of the async result.
+ * <br>
+ * {@link #trySplit()} drains the buffered values into an array-backed
+ * spliterator, so that parallel streams can process each chunk on
+ * another thread. chunk size grows with every split, up to MAX_BATCH.
+ * @author f.kinoshita
+ * @param <T> element type
+ ************************************************
+ */
+final class ResultSpliterator<T> implements Spliterator<T> {
+
+    static final int BATCH_UNIT = 1 << 10;
+
+    static final int MAX_BATCH = 1 << 25;
+
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL;
+
+    private final BlockingFlowable<T> blocking;
+
+    private final Iterator<T> iterator;
+
+    private int batch = 0;
+
+    /**
+     **********************************
+     * @param blocking blocking source
+     **********************************
+     */
+    ResultSpliterator(BlockingFlowable<T> blocking) {
+        this.blocking = blocking;
+        this.iterator = blocking.iterator();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        if (iterator.hasNext()) {
+            action.accept(iterator.next());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        while (iterator.hasNext()) {
+            action.accept(iterator.next());
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+        // take buffered values only(wait for the first value)
+        List<T> values = blocking.nextBatch(n, 0L);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        batch = n;
+        return Spliterators.spliterator(values.toArray(), CHARACTERISTICS);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import io.reactivex.Scheduler;
+
+/**
+ ************************************************
+ * process execute options.
+ * <pre>
+ * {@code
+ * try (ClosableResult<String> cr = proc.run(new RunOptions().setBufSize(256).setDirect(true))) {
+ *   ...
+ * }
+ * }
+ * </pre>
+ * @author f.kinoshita
+ ************************************************
+ */
+public final class RunOptions {
+
+    private int bufSize = ClosableResult.DEFAULT_BUF_SIZE;
+
+    private boolean delayError = false;
+
+    private Scheduler scheduler = null;
+
+    private boolean direct = false;
+
+    private int minBufSize = 0;
+
+    private int maxBufSize = 0;
+
+    private ClosableResult.CloseMode closeMode = ClosableResult.CloseMode.ABORT;
+
+    /**
+     **********************************
+     * set append buffer size.
+     * <br>
+     * in adaptive mode, the initial buffer size.
+     * @param bufSize append buffer size(default 4096)
+     * @return this instance
+     **********************************
+     */
+    public RunOptions setBufSize(int bufSize) {
+        if (bufSize <= 0) {
+            throw new IllegalArgumentException("bufSize is greater than 0.");
+        }
+        this.bufSize = bufSize;
+        return this;
+    }
+
+    public int getBufSize() {
+        return bufSize;
+    }
+
+    /**
+     **********************************
+     * set delay error.
+     * @param delayError if true, the exception is delayed until all added data is read.
+     *                   if false, immediately raise an exception.(default)
+     * @return this instance
+     **********************************
+     */
+    public RunOptions setDelayError(boolean delayError) {
+        this.delayError = delayError;
+        return this;
+    }
+
+    public boolean isDelayError() {
+        return delayError;
+    }
+
+    /**
+     **********************************
+     * set scheduler for execute process and deliver results.
+     * @param scheduler scheduler. if null, use {@link AsyncExecutors#getDefaultScheduler()}
+     * @return this instance
+     **********************************
+     */
+    public RunOptions setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler != null ? scheduler : AsyncExecutors.getDefaultScheduler();
+    }
+
+    /**
+     **********************************
+     * set direct delivery mode.
+     * <br>
+     * if true, the process thread writes values straight into the buffer
+     * read by the iterator, and the demand is driven by the iterator's reads.
+     * no delivery thread is used.
+     * @param direct if true, use direct delivery(default false)
+     * @return this instance
+     **********************************
+     */
+    public RunOptions setDirect(boolean direct) {
+        this.direct = direct;
+        return this;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     **********************************
+     * set adaptive buffer sizing.
+     * <br>
+     * the buffer and the request window grow for fast streams and shrink
+     * for slow or idle streams, based on the measured element rate.
+     * bufSize is used as the initial size.
+     * adaptive mode always uses direct delivery, because the queue of the
+     * delivery thread can not be resized.
+     * @param minBufSize min buffer size
+     * @param maxBufSize max buffer size
+     * @return this instance
+     **********************************
+     */
+    public RunOptions setAdaptive(int minBufSize, int maxBufSize) {
+        if (minBufSize <= 0) {
+            throw new IllegalArgumentException("minBufSize is greater than 0.");
+        }
+        if (maxBufSize < minBufSize) {
+            throw new IllegalArgumentException("maxBufSize is minBufSize or greater.");
+        }
+        this.minBufSize = minBufSize;
+        this.maxBufSize = maxBufSize;
+        return this;
+    }
+
+    public boolean isAdaptive() {
+        return minBufSize > 0;
+    }
+
+    public int getMinBufSize() {
+        return minBufSize;
+    }
+
+    public int getMaxBufSize() {
+        return maxBufSize;
+    }
+
+    /**
+     **********************************
+     * set close mode used by {@link ClosableResult#close()}
+     * and close() of the primitive results.
+     * @param closeMode close mode(default ABORT)
+     * @return this instance
+     **********************************
+     */
+    public RunOptions setCloseMode(ClosableResult.CloseMode closeMode) {
+        if (closeMode == null) {
+            throw new IllegalArgumentException("closeMode can not null.");
+        }
+        this.closeMode = closeMode;
+        return this;
+    }
+
+    public ClosableResult.CloseMode getCloseMode() {
+        return closeMode;
+    }
+
+    /**
+     **********************************
+     * create window calculator for adaptive mode.
+     * @return calculator. null if not adaptive
+     **********************************
+     */
+    BufferSizer newBufferSizer() {
+        if (!isAdaptive()) {
+            return null;
+        }
+        return new BufferSizer(bufSize, minBufSize, maxBufSize, System.nanoTime());
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.bunji.asyncutil.functions.Serializer;
+import io.reactivex.functions.Cancellable;
+
+/**
+ ************************************************
+ * append-only spill file buffer.
+ * <br>
+ * the appending threads write values to segment files, and the drain side
+ * reads them back in order. a segment is deleted when it is fully read,
+ * and the remaining files are deleted on {@link #cancel()}.
+ * writes are serialized on this buffer, so several threads can write.
+ * <p>
+ * written records become readable when they are flushed, that is every
+ * FLUSH_RECORDS records, on segment roll, on finish, or when the reader
+ * ran out of flushed records.
+ * @author f.kinoshita
+ * @param <T> element type
+ ************************************************
+ */
+final class SpillBuffer<T> implements Cancellable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillBuffer.class);
+
+    static final int FLUSH_RECORDS = 256;
+
+    static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private final Serializer<T> serializer;
+
+    /** parent directory of the spill directory */
+    private final File baseDir;
+
+    private final long segmentBytes;
+
+    private final ConcurrentLinkedQueue<Segment> segments = new ConcurrentLinkedQueue<>();
+
+    /** spill directory(created on first write) */
+    private volatile File dir;
+
+    /** total written records(written under the buffer lock) */
+    private volatile long written = 0;
+
+    /** total read records(written by reader only) */
+    private volatile long read = 0;
+
+    private volatile boolean closed = false;
+
+    // writer side(guarded by this)
+    private Segment wSeg;
+    private DataOutputStream out;
+    private int unflushed = 0;
+    private int segmentNo = 0;
+
+    // reader side
+    private Segment rSeg;
+    private DataInputStream in;
+    private long rCount;
+
+    /**
+     **********************************
+     * @param serializer value serializer
+     * @param baseDir directory for spill files. if null, use java.io.tmpdir
+     * @param segmentBytes max segment file size(up to Integer.MAX_VALUE, the range of DataOutputStream.size())
+     **********************************
+     */
+    SpillBuffer(Serializer<T> serializer, File baseDir, long segmentBytes) {
+        if (serializer == null) {
+            throw new IllegalArgumentException("serializer can not null.");
+        }
+        if (segmentBytes <= 0) {
+            throw new IllegalArgumentException("segmentBytes is greater than 0.");
+        }
+        if (segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentBytes is Integer.MAX_VALUE or less.");
+        }
+        this.serializer = serializer;
+        this.baseDir = baseDir != null ? baseDir : new File(System.getProperty("java.io.tmpdir"));
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     **********************************
+     * check unread records.
+     * @return true if all written records were read
+     **********************************
+     */
+    boolean isEmpty() {
+        return written == read;
+    }
+
+    long getWrittenCount() {
+        return written;
+    }
+
+    File getDirectory() {
+        return dir;
+    }
+
+    /**
+     **********************************
+     * write a value(writer side).
+     * @param value value
+     **********************************
+     */
+    synchronized void write(T value) {
+        try {
+            if (out == null) {
+                openSegment();
+            }
+            serializer.write(value, out);
+            written++;
+            if (++unflushed >= FLUSH_RECORDS) {
+                flush();
+            }
+            if (out.size() >= segmentBytes) {
+                seal();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     **********************************
+     * flush and seal the current segment(writer side).
+     **********************************
+     */
+    synchronized void finish() {
+        try {
+            if (out != null) {
+                seal();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        if (closed) {
+            throw new IOException("spill buffer closed.");
+        }
+        if (dir == null) {
+            dir = Files.createTempDirectory(baseDir.toPath(), "asyncutil-spill").toFile();
+            logger.debug("spill to {}", dir);
+        }
+        wSeg = new Segment(new File(dir, String.format("%08d.seg", segmentNo++)));
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(wSeg.file), 64 * 1024));
+        segments.add(wSeg);
+    }
+
+    private void flush() throws IOException {
+        out.flush();
+        wSeg.published += unflushed;
+        unflushed = 0;
+    }
+
+    // make the pending records readable(reader side)
+    private synchronized boolean flushPending() throws IOException {
+        if (closed || out == null || unflushed == 0) {
+            return false;
+        }
+        flush();
+        return true;
+    }
+
+    private void seal() throws IOException {
+        flush();
+        out.close();
+        out = null;
+        wSeg.sealed = true;
+    }
+
+    /**
+     **********************************
+     * read next value(reader side).
+     * @return value. null if no flushed record remains
+     **********************************
+     */
+    T poll() {
+        try {
+            for (;;) {
+                if (closed) {
+                    return null;
+                }
+                if (rSeg == null) {
+                    rSeg = segments.peek();
+                    if (rSeg == null) {
+                        break;
+                    }
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(rSeg.file), 64 * 1024));
+                    rCount = 0;
+                }
+                if (rCount < rSeg.published) {
+                    T value = serializer.read(in);
+                    rCount++;
+                    read++;
+                    return value;
+                }
+                if (!rSeg.sealed) {
+                    if (flushPending()) {
+                        continue;
+                    }
+                    break;
+                }
+                if (rCount < rSeg.published) {
+                    // flushed before sealed
+                    continue;
+                }
+                // segment fully read
+                in.close();
+                delete(rSeg.file);
+                segments.poll();
+                rSeg = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    /**
+     **********************************
+     * delete all spill files.
+     **********************************
+     */
+    @Override
+    public synchronized void cancel() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(out);
+        closeQuietly(in);
+        for (Segment seg : segments) {
+            delete(seg.file);
+        }
+        segments.clear();
+        if (dir != null) {
+            delete(dir);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                logger.warn("failed to close spill file. [{}]", e.toString());
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            logger.warn("failed to delete spill file. [{}]", file);
+        }
+    }
+
+    /**
+     ****************************************
+     * segment file.
+     ****************************************
+     */
+    private static final class Segment {
+        final File file;
+        /** readable records(written by writer only) */
+        volatile long published = 0;
+        /** true if no more records are written */
+        volatile boolean sealed = false;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+}
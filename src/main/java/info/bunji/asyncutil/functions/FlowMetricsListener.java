@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil.functions;
+
+/**
+ ************************************************
+ * flow control event listener.
+ * <br>
+ * methods are called on the process or consumer thread while the process
+ * is running, so implementations must be thread safe and return quickly.
+ * @author f.kinoshita
+ ************************************************
+ */
+public interface FlowMetricsListener {
+
+    /**
+     **********************************
+     * called when the consumer requests more values.
+     * @param n requested count
+     **********************************
+     */
+    default void onRequest(long n) {
+        // do nothing.
+    }
+
+    /**
+     **********************************
+     * called after the process was blocked in append() waiting for a request.
+     * @param nanos blocked time(ns)
+     **********************************
+     */
+    default void onProducerBlocked(long nanos) {
+        // do nothing.
+    }
+
+    /**
+     **********************************
+     * called after the consumer was blocked in hasNext() waiting for a value.
+     * @param nanos blocked time(ns)
+     **********************************
+     */
+    default void onConsumerBlocked(long nanos) {
+        // do nothing.
+    }
+
+    /**
+     **********************************
+     * called when the first value is emitted.
+     * @param nanos time from process start(ns)
+     **********************************
+     */
+    default void onFirstElement(long nanos) {
+        // do nothing.
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil.functions;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ ************************************************
+ * value serializer for spill files.
+ * <br>
+ * records are written back to back, so {@link #read(DataInput)} must read
+ * exactly the bytes written by {@link #write(Object, DataOutput)}.
+ * @param <T> element type
+ * @author f.kinoshita
+ ************************************************
+ */
+public interface Serializer<T> {
+
+    /**
+     **********************************
+     * write a value.
+     * @param value value
+     * @param out output
+     * @throws IOException write error
+     **********************************
+     */
+    void write(T value, DataOutput out) throws IOException;
+
+    /**
+     **********************************
+     * read a value.
+     * @param in input
+     * @return value
+     * @throws IOException read error
+     **********************************
+     */
+    T read(DataInput in) throws IOException;
+}
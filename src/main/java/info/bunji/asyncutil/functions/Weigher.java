@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016-2018 Fumiharu Kinoshita
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package info.bunji.asyncutil.functions;
+
+/**
+ ************************************************
+ * element size calculator for byte-bounded buffers.
+ * <br>
+ * called on the process thread when a value is appended, and again on the
+ * consumer thread when it is read. it must return the same weight for the
+ * same value, and return quickly.
+ * @param <T> element type
+ * @author f.kinoshita
+ ************************************************
+ */
+public interface Weigher<T> {
+
+    /**
+     **********************************
+     * get the weight of the value.
+     * @param value appended value
+     * @return weight in bytes(0 or greater)
+     **********************************
+     */
+    long weigh(T value);
+}
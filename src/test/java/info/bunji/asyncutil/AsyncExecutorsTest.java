@@ -0,0 +1,148 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+@FixMethodOrder
+public class AsyncExecutorsTest extends AsyncTestBase {
+
+	@Test
+	public void testDefaultScheduler() throws Exception {
+		ThreadNameFunc execFunc = new ThreadNameFunc();
+		try (ClosableResult<String> results = new AsyncProc<>(execFunc).run()) {
+			assertThat(results.toList().size(), is(1));
+		}
+		assertThat(execFunc.threadName, startsWith("asyncutil-worker-"));
+		assertThat(execFunc.isDaemon, is(true));
+	}
+
+	@Test(timeout = 20000)
+	public void testDefaultExecutor_maxThreads() throws Exception {
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) AsyncExecutors.getDefaultExecutor();
+		int max = AsyncExecutors.getDefaultMaxThreads();
+		assertThat(executor.getMaximumPoolSize(), is(max));
+
+		// tasks over the limit are queued
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(max + 10);
+		try {
+			for (int i = 0; i < max + 10; i++) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							// do nothing.
+						}
+						finished.countDown();
+					}
+				});
+			}
+			assertThat(executor.getPoolSize(), is(max));
+			assertThat(executor.getQueue().size(), greaterThanOrEqualTo(10));
+		} finally {
+			release.countDown();
+		}
+		assertThat(finished.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(executor.getLargestPoolSize(), lessThanOrEqualTo(max));
+	}
+
+	@Test
+	public void testSetDefaultScheduler() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool(AsyncExecutors.newThreadFactory("custom"));
+		try {
+			AsyncExecutors.setDefaultScheduler(Schedulers.from(executor));
+			ThreadNameFunc execFunc = new ThreadNameFunc();
+			try (ClosableResult<String> results = new AsyncProc<>(execFunc).run()) {
+				assertThat(results.toList().size(), is(1));
+			}
+			assertThat(execFunc.threadName, startsWith("custom-"));
+		} finally {
+			AsyncExecutors.setDefaultScheduler(null);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRun_withScheduler() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4, AsyncExecutors.newThreadFactory("fixed"));
+		Scheduler scheduler = Schedulers.from(executor);
+		try {
+			// reuse pool threads
+			for (int i = 0; i < 10; i++) {
+				ThreadNameFunc execFunc = new ThreadNameFunc();
+				try (ClosableResult<String> results = new AsyncProc<>(execFunc).run(16, false, scheduler)) {
+					assertThat(results.toList().size(), is(1));
+				}
+				assertThat(execFunc.threadName, startsWith("fixed-"));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testProcess_withScheduler() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			int size = 10000;
+			try (ClosableResult<Integer> results = new IntAsyncProcess(size).run(Schedulers.from(executor))) {
+				assertThat(results.toList().size(), is(size));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testVirtualThreadScheduler() throws Exception {
+		Assume.assumeTrue(AsyncExecutors.isVirtualThreadSupported());
+		Scheduler scheduler = AsyncExecutors.newVirtualThreadScheduler();
+		int size = 10000;
+		try (ClosableResult<Integer> results = new IntAsyncProcess(size).run(256, false, scheduler)) {
+			assertThat(results.toList().size(), is(size));
+		}
+		ThreadNameFunc execFunc = new ThreadNameFunc();
+		try (ClosableResult<String> results = new AsyncProc<>(execFunc).run(scheduler)) {
+			assertThat(results.toList().size(), is(1));
+		}
+		assertThat(execFunc.isVirtual, is(true));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testVirtualThreadScheduler_unsupported() throws Exception {
+		Assume.assumeFalse(AsyncExecutors.isVirtualThreadSupported());
+		AsyncExecutors.newVirtualThreadScheduler();
+	}
+
+	static class ThreadNameFunc extends AsyncProc.ExecuteFunc<String> {
+		volatile String threadName;
+		volatile boolean isDaemon;
+		volatile boolean isVirtual;
+
+		@Override
+		public void execute() throws Exception {
+			threadName = Thread.currentThread().getName();
+			isDaemon = Thread.currentThread().isDaemon();
+			isVirtual = Thread.currentThread().getClass().getName().contains("Virtual");
+			append(threadName);
+		}
+	}
+}
@@ -5,9 +5,26 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
 import static org.mockito.Mockito.spy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 
+import info.bunji.asyncutil.functions.Serializer;
+import io.reactivex.functions.Consumer;
+
 @FixMethodOrder
 public class AsyncIntervalProcessTest extends AsyncTestBase {
 
@@ -54,6 +71,23 @@ public class AsyncIntervalProcessTest extends AsyncTestBase {
 		}
 	}
 
+	@Test(timeout = 10000)
+	public void testRunPush() throws Exception {
+		int count = 5;
+		final AtomicLong pushed = new AtomicLong(0);
+		TestIntervalProc proc = new TestIntervalProc(50).setCycleCount(count);
+		// blocks until the last interval
+		ExecResult result = proc.runPush(new Consumer<String>() {
+			@Override
+			public void accept(String value) {
+				pushed.incrementAndGet();
+			}
+		});
+		assertThat(pushed.get(), is((long) count));
+		assertThat(result.getProcessed(), is((long) count));
+		assertThat(result.isSuccess(), is(true));
+	}
+
 	@Test(expected = IllegalStateException.class)
 	public void testExecuteInterval_exception() throws Exception {
 		int count = 10;
@@ -74,4 +108,326 @@ public class AsyncIntervalProcessTest extends AsyncTestBase {
 	public void testExecuteInterval_negativeInterval() throws Exception {
 		new TestIntervalProc(-1);
 	}
+
+	@Test
+	public void testExecuteInterval_sharedExecutor() throws Exception {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+		try {
+			List<ClosableResult<String>> resultList = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				TestIntervalProc proc = new TestIntervalProc(10).setCycleCount(5);
+				proc.setScheduledExecutor(executor);
+				resultList.add(proc.run());
+			}
+			for (ClosableResult<String> results : resultList) {
+				try (ClosableResult<String> r = results) {
+					assertThat(r.toList().size(), is(5));
+				}
+			}
+			// all intervals run on one thread
+			assertThat(executor.getLargestPoolSize(), is(1));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testExecuteInterval_disposeRemovesTask() throws Exception {
+		final Semaphore scheduled = new Semaphore(0);
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1) {
+			@Override
+			public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+				ScheduledFuture<?> f = super.schedule(command, delay, unit);
+				scheduled.release();
+				return f;
+			}
+		};
+		executor.setRemoveOnCancelPolicy(true);
+		try {
+			TestIntervalProc proc = new TestIntervalProc(1000).setCycleCount(100);
+			proc.setScheduledExecutor(executor);
+			try (ClosableResult<String> results = proc.run()) {
+				assertThat(results.iterator().next(), is("1"));
+				// first run and next run are scheduled
+				scheduled.acquire(2);
+				assertThat(executor.getQueue().size(), is(1));
+			}
+			assertThat(executor.getQueue().size(), is(0));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testExecuteInterval_slowConsumer() throws Exception {
+		// a blocked append does not hold the scheduled executor
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+		try {
+			TestIntervalProc blocked = new TestIntervalProc(1).setCycleCount(1000);
+			blocked.setScheduledExecutor(executor);
+			TestIntervalProc other = new TestIntervalProc(10).setCycleCount(5);
+			other.setScheduledExecutor(executor);
+			try (ClosableResult<String> r1 = blocked.run(1);
+					ClosableResult<String> r2 = other.run()) {
+				// r1 is never read
+				assertThat(r2.toList().size(), is(5));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSetSpill() throws Exception {
+		int count = 200;
+		File dir = Files.createTempDirectory("spilltest").toFile();
+		try {
+			TestIntervalProc proc = new TestIntervalProc(1).setCycleCount(count);
+			proc.getAsyncProc().setSpill(new StringSerializer(), dir, 1024);
+			try (ClosableResult<String> results = proc.run(16)) {
+				// runs after execute() returned are spilled
+				Thread.sleep(300);
+				int expected = 0;
+				for (String s : results) {
+					assertThat(s, is("" + (++expected)));
+				}
+				assertThat(expected, is(count));
+			}
+			assertThat(awaitEmpty(dir), is(true));
+		} finally {
+			dir.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSetSpill_close() throws Exception {
+		File dir = Files.createTempDirectory("spilltest").toFile();
+		try {
+			TestIntervalProc proc = new TestIntervalProc(1).setCycleCount(Integer.MAX_VALUE);
+			proc.getAsyncProc().setSpill(new StringSerializer(), dir, 1024);
+			try (ClosableResult<String> results = proc.run(16)) {
+				assertThat(results.iterator().next(), is("1"));
+				// wait for spilled segments
+				for (int i = 0; i < 100 && dir.list().length == 0; i++) {
+					Thread.sleep(10);
+				}
+				assertThat(dir.list().length, is(1));
+			}
+			// spill files are deleted on close
+			assertThat(awaitEmpty(dir), is(true));
+		} finally {
+			dir.delete();
+		}
+	}
+
+	// wait until the spill directory is deleted
+	private static boolean awaitEmpty(File dir) throws InterruptedException {
+		for (int i = 0; i < 200; i++) {
+			String[] files = dir.list();
+			if (files == null || files.length == 0) {
+				return true;
+			}
+			Thread.sleep(10);
+		}
+		return false;
+	}
+
+	static class StringSerializer implements Serializer<String> {
+		@Override
+		public void write(String value, DataOutput out) throws IOException {
+			out.writeUTF(value);
+		}
+
+		@Override
+		public String read(DataInput in) throws IOException {
+			return in.readUTF();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetIntervalPolicy_null() throws Exception {
+		new TestIntervalProc(10).setIntervalPolicy(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetMaxInterval_lessThanInterval() throws Exception {
+		new TestIntervalProc(10).setMaxInterval(5);
+	}
+
+	@Test
+	public void testPolicy_fixedRate() throws Exception {
+		// first run is slow, missed runs are executed back to back
+		FakeClockExecutor executor = new FakeClockExecutor();
+		try {
+			SlowIntervalProc proc = new SlowIntervalProc(20, 6, 70, executor);
+			try (ClosableResult<String> results = proc.run()) {
+				assertThat(results.toList().size(), is(6));
+			}
+			assertThat(executor.getDelays(), is(millis(0, 0, 0, 0, 10, 20)));
+			assertThat(proc.getIntervalStats().getRunCount(), is(6L));
+			assertThat(proc.getIntervalStats().getOverrunCount(), is(1L));
+			// run at 20ms started at 70ms
+			assertThat(proc.getIntervalStats().getMaxDriftNanos(), is(TimeUnit.MILLISECONDS.toNanos(50)));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPolicy_fixedDelay() throws Exception {
+		FakeClockExecutor executor = new FakeClockExecutor();
+		try {
+			SlowIntervalProc proc = new SlowIntervalProc(20, 4, 70, executor);
+			proc.setIntervalPolicy(IntervalPolicy.FIXED_DELAY);
+			try (ClosableResult<String> results = proc.run()) {
+				assertThat(results.toList().size(), is(4));
+			}
+			// full interval after each run
+			assertThat(executor.getDelays(), is(millis(0, 20, 20, 20)));
+			assertThat(proc.getIntervalStats().getMaxDriftNanos(), is(0L));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPolicy_skipMissed() throws Exception {
+		FakeClockExecutor executor = new FakeClockExecutor();
+		try {
+			SlowIntervalProc proc = new SlowIntervalProc(20, 4, 70, executor);
+			proc.setIntervalPolicy(IntervalPolicy.SKIP_MISSED);
+			try (ClosableResult<String> results = proc.run()) {
+				assertThat(results.toList().size(), is(4));
+			}
+			// runs at 20, 40, 60ms are skipped, next run at 80ms
+			assertThat(executor.getDelays(), is(millis(0, 10, 20, 20)));
+			assertThat(proc.getIntervalStats().getSkippedCount(), is(3L));
+			assertThat(proc.getIntervalStats().getRunCount(), is(4L));
+			assertThat(proc.getIntervalStats().getOverrunCount(), is(1L));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPolicy_adaptive() throws Exception {
+		final long interval = 10;
+		final FakeClockExecutor executor = new FakeClockExecutor();
+		final List<Long> intervals = Collections.synchronizedList(new ArrayList<Long>());
+		try {
+			AsyncIntervalProcess<String> proc = new AsyncIntervalProcess<String>(interval) {
+				private int count = 0;
+
+				@Override
+				protected boolean executeInterval() throws Exception {
+					count++;
+					intervals.add(getIntervalStats().getCurrentIntervalNanos());
+					if (count >= 6) {
+						append("" + count);
+					}
+					return count < 7;
+				}
+
+				@Override
+				long nanoTime() {
+					return executor.getClock();
+				}
+			};
+			proc.setIntervalPolicy(IntervalPolicy.ADAPTIVE).setMaxInterval(interval * 4);
+			proc.setScheduledExecutor(executor);
+			try (ClosableResult<String> results = proc.run()) {
+				assertThat(results.toList().size(), is(2));
+			}
+			// interval is stretched while nothing was appended, and shrinks after append
+			assertThat(intervals, is(millis(10, 20, 40, 40, 40, 40, 20)));
+			assertThat(executor.getDelays(), is(millis(0, 20, 40, 40, 40, 40, 20)));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static List<Long> millis(long... values) {
+		List<Long> list = new ArrayList<>();
+		for (long v : values) {
+			list.add(TimeUnit.MILLISECONDS.toNanos(v));
+		}
+		return list;
+	}
+
+	/**
+	 ********************************************
+	 * scheduled executor with a simulated clock.
+	 * <br>
+	 * records the requested delays, and runs the task at once
+	 * after advancing the clock by the delay.
+	 ********************************************
+	 */
+	static class FakeClockExecutor extends ScheduledThreadPoolExecutor {
+		private final AtomicLong clock = new AtomicLong(0);
+		private final List<Long> delays = Collections.synchronizedList(new ArrayList<Long>());
+
+		FakeClockExecutor() {
+			super(1);
+		}
+
+		long getClock() {
+			return clock.get();
+		}
+
+		void advance(long millis) {
+			clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+
+		List<Long> getDelays() {
+			return new ArrayList<>(delays);
+		}
+
+		@Override
+		public ScheduledFuture<?> schedule(final Runnable command, long delay, TimeUnit unit) {
+			final long nanos = unit.toNanos(delay);
+			delays.add(nanos);
+			return super.schedule(new Runnable() {
+				@Override
+				public void run() {
+					clock.addAndGet(nanos);
+					command.run();
+				}
+			}, 0, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 ********************************************
+	 * first run takes firstDelay ms on the executor clock.
+	 ********************************************
+	 */
+	static class SlowIntervalProc extends AsyncIntervalProcess<String> {
+		private final int cycleCount;
+		private final long firstDelay;
+		private final FakeClockExecutor executor;
+		private int count = 0;
+
+		SlowIntervalProc(long interval, int cycleCount, long firstDelay, FakeClockExecutor executor) {
+			super(interval);
+			this.cycleCount = cycleCount;
+			this.firstDelay = firstDelay;
+			this.executor = executor;
+			setScheduledExecutor(executor);
+		}
+
+		@Override
+		protected boolean executeInterval() throws Exception {
+			if (count == 0) {
+				executor.advance(firstDelay);
+			}
+			count++;
+			append("" + count);
+			return count < cycleCount;
+		}
+
+		@Override
+		long nanoTime() {
+			return executor.getClock();
+		}
+	}
 }
@@ -1,17 +1,40 @@
 package info.bunji.asyncutil;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThan;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 
+import info.bunji.asyncutil.functions.FlowMetricsListener;
 import info.bunji.asyncutil.functions.PostFunc;
+import info.bunji.asyncutil.functions.Serializer;
+import info.bunji.asyncutil.functions.Weigher;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.BaseTestConsumer.TestWaitStrategy;
+import io.reactivex.subscribers.TestSubscriber;
 
 @FixMethodOrder
 public class AsyncProcTest extends AsyncTestBase {
@@ -185,4 +208,531 @@ public class AsyncProcTest extends AsyncTestBase {
 			Thread.sleep(500);
 		}
 	}
+
+	@Test
+	public void testAppendAll() throws Exception {
+		final int size = 10000;
+		ExecuteFuncImpl execFunc = new ExecuteFuncImpl(size);
+		try (ClosableResult<Integer> results = new AsyncProc<>(execFunc).run(256)) {
+			List<Integer> list = results.toList();
+			assertThat(list.size(), is(size * 2));
+			for (int i = 0; i < size; i++) {
+				assertThat(list.get(i), is(i));
+				assertThat(list.get(size + i), is(i));
+			}
+		}
+	}
+
+	@Test
+	public void testRun_direct() throws Exception {
+		int size = 100000;
+		IntExecAction execFunc = spy(new IntExecAction(size));
+		AsyncProc<Integer> proc = new AsyncProc<Integer>().setExecFunc(execFunc);
+		try (ClosableResult<Integer> results = proc.run(new RunOptions().setBufSize(64).setDirect(true))) {
+			int expected = 1;
+			for (int n : results) {
+				assertThat(n, is(expected++));
+			}
+			assertThat(expected - 1, is(size));
+		} finally {
+			verify(execFunc, times(1)).execute();
+		}
+	}
+
+	@Test
+	public void testRun_directInterrupt() throws Exception {
+		IntExecAction execFunc = spy(new IntExecAction(10000));
+		PostFunc postFunc = spy(new TestPostAction());
+		AsyncProc<Integer> proc = new AsyncProc<Integer>().setExecFunc(execFunc).setPostFunc(postFunc);
+		try (ClosableResult<Integer> results = proc.run(new RunOptions().setDirect(true).setBufSize(128))) {
+			for (int n : results) {
+				if (n > 1000) break;
+			}
+		} finally {
+			verify(execFunc, times(1)).execute();
+			verify(postFunc, times(1)).execute(any(ExecResult.class));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRun_directException_delay() throws Exception {
+		IntExecAction execFunc = spy(new IntExecAction(1000).setThrow(500));
+		AsyncProc<Integer> proc = new AsyncProc<Integer>().setExecFunc(execFunc);
+		int cnt = 0;
+		try (ClosableResult<Integer> results = proc.run(new RunOptions().setDirect(true).setDelayError(true))) {
+			for (@SuppressWarnings("unused") int n : results) {
+				cnt++;
+			}
+		} finally {
+			assertThat(cnt, is(500));
+		}
+	}
+
+	@Test
+	public void testMetrics_slowConsumer() throws Exception {
+		final AtomicReference<ExecResult> result = new AtomicReference<>();
+		final AtomicLong blocked = new AtomicLong();
+		final AtomicLong requests = new AtomicLong();
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new IntExecAction(200))
+				.setPostFunc(new PostFunc() {
+					@Override
+					public void execute(ExecResult r) {
+						result.set(r);
+					}
+				})
+				.setMetricsListener(new FlowMetricsListener() {
+					@Override
+					public void onProducerBlocked(long nanos) {
+						blocked.addAndGet(nanos);
+					}
+
+					@Override
+					public void onRequest(long n) {
+						requests.incrementAndGet();
+					}
+				});
+		try (ClosableResult<Integer> results = proc.run(new RunOptions().setBufSize(16).setDirect(true))) {
+			for (@SuppressWarnings("unused") int n : results) {
+				Thread.sleep(1);
+			}
+		}
+		Thread.sleep(100);
+		ExecResult r = result.get();
+		assertThat(r.getProcessed(), is(200L));
+		assertThat(r.getProducerWaitNanos(), greaterThan(0L));
+		assertThat(r.getProducerWaitNanos(), lessThanOrEqualTo(blocked.get()));
+		assertThat(r.getRequestCount(), greaterThan(1L));
+		assertThat(requests.get(), greaterThan(1L));
+		assertThat(r.getBufferHighWater(), greaterThan(0L));
+		assertThat(r.getBufferHighWater(), lessThanOrEqualTo(16L));
+		assertThat(r.getFirstElementNanos(), greaterThan(0L));
+	}
+
+	@Test
+	public void testMetrics_slowProducer() throws Exception {
+		final AtomicReference<ExecResult> result = new AtomicReference<>();
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new AsyncProc.ExecuteFunc<Integer>() {
+					@Override
+					public void execute() throws Exception {
+						for (int i = 0; i < 20; i++) {
+							Thread.sleep(5);
+							append(i);
+						}
+					}
+				})
+				.setPostFunc(new PostFunc() {
+					@Override
+					public void execute(ExecResult r) {
+						result.set(r);
+					}
+				});
+		try (ClosableResult<Integer> results = proc.run()) {
+			assertThat(results.toList().size(), is(20));
+		}
+		Thread.sleep(100);
+		assertThat(result.get().getConsumerWaitNanos(), greaterThan(0L));
+	}
+
+	@Test
+	public void testSetWeigher() throws Exception {
+		final AtomicLong maxBytes = new AtomicLong(0);
+		final AtomicReference<ExecResult> result = new AtomicReference<>();
+		final AsyncProc<byte[]> proc = new AsyncProc<>();
+		proc.setExecFunc(new AsyncProc.ExecuteFunc<byte[]>() {
+					@Override
+					public void execute() throws Exception {
+						for (int i = 0; i < 100; i++) {
+							append(new byte[1000]);
+							long bytes = proc.getByteBudget().getBufferedBytes();
+							maxBytes.set(Math.max(maxBytes.get(), bytes));
+						}
+					}
+				})
+				.setWeigher(new ByteArrayWeigher(), 10000)
+				.setPostFunc(new PostFunc() {
+					@Override
+					public void execute(ExecResult r) {
+						result.set(r);
+					}
+				});
+		int count = 0;
+		try (ClosableResult<byte[]> results = proc.run()) {
+			for (byte[] doc : results) {
+				Thread.sleep(1);
+				count++;
+			}
+		}
+		assertThat(count, is(100));
+		assertThat(maxBytes.get(), lessThanOrEqualTo(10000L));
+		assertThat(proc.getByteBudget().getBufferedBytes(), is(0L));
+		Thread.sleep(100);
+		assertThat(result.get().getProducerWaitNanos(), greaterThan(0L));
+	}
+
+	@Test
+	public void testSetWeigher_oversize() throws Exception {
+		AsyncProc<byte[]> proc = new AsyncProc<>(new AsyncProc.ExecuteFunc<byte[]>() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < 3; i++) {
+					append(new byte[2000]);
+				}
+			}
+		}).setWeigher(new ByteArrayWeigher(), 1000);
+		try (ClosableResult<byte[]> results = proc.run()) {
+			assertThat(results.toList().size(), is(3));
+		}
+	}
+
+	@Test
+	public void testSetWeigher_dispose() throws Exception {
+		PostFunc postFunc = spy(new TestPostAction());
+		AsyncProc<byte[]> proc = new AsyncProc<>(new AsyncProc.ExecuteFunc<byte[]>() {
+			@Override
+			public void execute() throws Exception {
+				for (;;) {
+					append(new byte[100]);
+				}
+			}
+		}).setWeigher(new ByteArrayWeigher(), 1000).setPostFunc(postFunc);
+		try (ClosableResult<byte[]> results = proc.run()) {
+			results.iterator().next();
+			// producer is blocked by the byte budget
+			Thread.sleep(100);
+		}
+		Thread.sleep(100);
+		assertThat(proc.isDisposed(), is(true));
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+	}
+
+	@Test(timeout = 10000)
+	public void testByteBudget_concurrentAcquire() throws Exception {
+		final ByteBudget budget = new ByteBudget(new ByteArrayWeigher(), 1000);
+		final FlowMetrics metrics = new FlowMetrics();
+		final Disposable proc = Disposables.empty();
+		final byte[] value = new byte[100];
+		final AtomicLong maxBytes = new AtomicLong(0);
+		final int producers = 4;
+		final int count = 10000;
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < producers; i++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int n = 0; n < count; n++) {
+						budget.acquire(value.length, proc, metrics);
+						long bytes = budget.getBufferedBytes();
+						synchronized (maxBytes) {
+							maxBytes.set(Math.max(maxBytes.get(), bytes));
+						}
+					}
+				}
+			});
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		// consumer releases every acquired value
+		long released = 0;
+		while (released < producers * count) {
+			if (budget.getBufferedBytes() > 0) {
+				budget.release(value);
+				released++;
+			} else {
+				Thread.yield();
+			}
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertThat(maxBytes.get(), lessThanOrEqualTo(1000L));
+		assertThat(budget.getBufferedBytes(), is(0L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetWeigher_invalidBytes() throws Exception {
+		new AsyncProc<byte[]>().setWeigher(new ByteArrayWeigher(), 0);
+	}
+
+	static class ByteArrayWeigher implements Weigher<byte[]> {
+		@Override
+		public long weigh(byte[] value) {
+			return value.length;
+		}
+	}
+
+	@Test
+	public void testSetSpill() throws Exception {
+		final int size = 100000;
+		final CountDownLatch finished = new CountDownLatch(1);
+		File dir = Files.createTempDirectory("spilltest").toFile();
+		AsyncProc<Integer> proc = new AsyncProc<>(new AsyncProc.ExecuteFunc<Integer>() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < size; i++) {
+					append(i);
+				}
+				finished.countDown();
+			}
+		}).setSpill(new IntSerializer(), dir, 64 * 1024);
+		try (ClosableResult<Integer> results = proc.run(256)) {
+			// process finishes without consumer
+			assertThat(finished.await(10, TimeUnit.SECONDS), is(true));
+			assertThat(dir.list().length, is(1));
+			int expected = 0;
+			for (int n : results) {
+				assertThat(n, is(expected++));
+			}
+			assertThat(expected, is(size));
+		} finally {
+			Thread.sleep(100);
+			assertThat(dir.list().length, is(0));
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testSetSpill_close() throws Exception {
+		final CountDownLatch finished = new CountDownLatch(1);
+		PostFunc postFunc = spy(new TestPostAction());
+		File dir = Files.createTempDirectory("spilltest").toFile();
+		AsyncProc<Integer> proc = new AsyncProc<>(new AsyncProc.ExecuteFunc<Integer>() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < 100000; i++) {
+					append(i);
+				}
+				finished.countDown();
+			}
+		}).setSpill(new IntSerializer(), dir, 64 * 1024).setPostFunc(postFunc);
+		try (ClosableResult<Integer> results = proc.run(256)) {
+			assertThat(finished.await(10, TimeUnit.SECONDS), is(true));
+			Iterator<Integer> it = results.iterator();
+			for (int i = 0; i < 1000; i++) {
+				assertThat(it.next(), is(i));
+			}
+		}
+		Thread.sleep(100);
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+		assertThat(dir.list().length, is(0));
+		dir.delete();
+	}
+
+	@Test(timeout = 10000)
+	public void testSetSpill_slowProducer() throws Exception {
+		final CountDownLatch resume = new CountDownLatch(1);
+		AsyncProc<Integer> proc = new AsyncProc<>(new AsyncProc.ExecuteFunc<Integer>() {
+			@Override
+			public void execute() throws Exception {
+				// fewer than FLUSH_RECORDS values, then idle
+				for (int i = 0; i < 100; i++) {
+					append(i);
+				}
+				resume.await();
+				append(100);
+			}
+		}).setSpill(new IntSerializer());
+		TestSubscriber<Integer> ts = proc.toFlowable().test(0);
+		Thread.sleep(100);
+		ts.request(200);
+		// spilled values are readable while the producer is idle
+		ts.awaitCount(100, TestWaitStrategy.SLEEP_1MS, 5000);
+		ts.assertValueCount(100);
+		resume.countDown();
+		ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		ts.assertValueCount(101);
+		ts.assertComplete();
+	}
+
+	@Test(timeout = 10000)
+	public void testSetSpill_multiProducer() throws Exception {
+		final int producers = 4;
+		final int size = 25000;
+		final CountDownLatch finished = new CountDownLatch(1);
+		AsyncProc<Integer> proc = new AsyncProc<>(new AsyncProc.ExecuteFunc<Integer>() {
+			@Override
+			public void execute() throws Exception {
+				List<Thread> threads = new ArrayList<>();
+				for (int p = 0; p < producers; p++) {
+					final int base = p * size;
+					threads.add(new Thread() {
+						@Override
+						public void run() {
+							for (int i = 0; i < size; i++) {
+								append(base + i);
+							}
+						}
+					});
+				}
+				for (Thread t : threads) {
+					t.start();
+				}
+				for (Thread t : threads) {
+					t.join();
+				}
+				finished.countDown();
+			}
+		}).setSpill(new IntSerializer(), null, 64 * 1024);
+		boolean[] seen = new boolean[producers * size];
+		int count = 0;
+		try (ClosableResult<Integer> results = proc.run(256)) {
+			assertThat(finished.await(10, TimeUnit.SECONDS), is(true));
+			for (int n : results) {
+				assertThat(seen[n], is(false));
+				seen[n] = true;
+				count++;
+			}
+		}
+		assertThat(count, is(producers * size));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetSpill_segmentTooLarge() throws Exception {
+		// segment size is counted by DataOutputStream.size()
+		new AsyncProc<Integer>().setSpill(new IntSerializer(), null, Integer.MAX_VALUE + 1L);
+	}
+
+	@Test
+	public void testSetSpill_exception() throws Exception {
+		AsyncProc<Integer> proc = new AsyncProc<>(new IntExecAction(10000).setThrow(5000))
+										.setSpill(new IntSerializer());
+		int count = 0;
+		try (ClosableResult<Integer> results = proc.run(16, true)) {
+			Thread.sleep(100);
+			for (int n : results) {
+				assertThat(n, is(++count));
+			}
+		} catch (IllegalStateException ise) {
+			// exception in process
+		}
+		assertThat(count, is(5000));
+	}
+
+	@Test
+	public void testToFlowable() throws Exception {
+		PostFunc postFunc = spy(new TestPostAction());
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new IntExecAction(Integer.MAX_VALUE)).setPostFunc(postFunc);
+		TestSubscriber<Integer> ts = proc.toFlowable().test(0);
+
+		ts.request(10);
+		ts.awaitCount(10);
+		Thread.sleep(50);
+		// not emitted ahead of the requests
+		ts.assertValueCount(10);
+		assertThat(proc.getProcessedCount(), is(10L));
+
+		ts.request(5);
+		ts.awaitCount(15);
+		ts.assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15);
+
+		ts.cancel();
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+	}
+
+	@Test
+	public void testToFlowable_error() throws Exception {
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new IntExecAction(100).setThrow(50));
+		TestSubscriber<Integer> ts = proc.toFlowable().test();
+		ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		ts.assertValueCount(50);
+		ts.assertError(IllegalStateException.class);
+	}
+
+	@Test
+	public void testToFlowable_weigher() throws Exception {
+		AsyncProc<byte[]> proc = new AsyncProc<>(new AsyncProc.ExecuteFunc<byte[]>() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < 100; i++) {
+					append(new byte[1024]);
+				}
+			}
+		}).setWeigher(new ByteArrayWeigher(), 4096);
+		List<byte[]> values = proc.toFlowable().toList().blockingGet();
+		assertThat(values.size(), is(100));
+		assertThat(proc.getByteBudget().getBufferedBytes(), is(0L));
+	}
+
+	@Test
+	public void testRunPush() throws Exception {
+		PostFunc postFunc = spy(new TestPostAction());
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new ExecuteFuncImpl(1000)).setPostFunc(postFunc);
+		final Thread caller = Thread.currentThread();
+		final AtomicLong sum = new AtomicLong(0);
+		ExecResult result = proc.runPush(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				// called on the calling thread
+				assertThat(Thread.currentThread() == caller, is(true));
+				sum.addAndGet(value);
+			}
+		});
+		assertThat(result.isSuccess(), is(true));
+		assertThat(result.getProcessed(), is(2000L));
+		assertThat(sum.get(), is(999L * 1000));
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+	}
+
+	@Test
+	public void testRunPush_dispose() throws Exception {
+		final AsyncProc<Integer> proc = new AsyncProc<Integer>(new IntExecAction(Integer.MAX_VALUE));
+		ExecResult result = proc.runPush(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				if (value == 100) {
+					proc.dispose();
+				}
+			}
+		});
+		assertThat(result.isSuccess(), is(true));
+		assertThat(result.getProcessed(), is(100L));
+	}
+
+	@Test
+	public void testRunPush_consumerError() throws Exception {
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new IntExecAction(1000));
+		ExecResult result = proc.runPush(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) throws Exception {
+				if (value == 10) {
+					throw new IOException("consumer error.");
+				}
+			}
+		});
+		assertThat(result.isSuccess(), is(false));
+		assertThat(result.getException().getCause() instanceof IOException, is(true));
+		assertThat(result.getProcessed(), is(9L));
+	}
+
+	static class IntSerializer implements Serializer<Integer> {
+		@Override
+		public void write(Integer value, DataOutput out) throws IOException {
+			out.writeInt(value);
+		}
+
+		@Override
+		public Integer read(DataInput in) throws IOException {
+			return in.readInt();
+		}
+	}
+
+	static class ExecuteFuncImpl extends AsyncProc.ExecuteFunc<Integer> {
+		private final int size;
+
+		ExecuteFuncImpl(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public void execute() throws Exception {
+			List<Integer> page = new ArrayList<>();
+			Integer[] array = new Integer[size + 2];
+			for (int i = 0; i < size; i++) {
+				page.add(i);
+				array[i + 1] = i;
+			}
+			appendAll(page);
+			appendAll(array, 1, size);
+		}
+	}
 }
@@ -22,12 +22,18 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 
+import io.reactivex.Flowable;
+import io.reactivex.functions.Consumer;
+
 @FixMethodOrder
 public class AsyncProcessTest extends AsyncTestBase {
 
@@ -148,4 +154,57 @@ public class AsyncProcessTest extends AsyncTestBase {
 			results.iterator().remove();
 		}
 	}
+
+	@Test
+	public void testRun_appendAll() throws Exception {
+		AsyncProcess<Integer> proc = new AsyncProcess<Integer>() {
+			@Override
+			protected void execute() throws Exception {
+				Integer[] page = new Integer[1000];
+				for (int n = 0; n < 10; n++) {
+					Arrays.fill(page, n);
+					if ((n % 2) == 0) {
+						appendAll(Arrays.asList(page));
+					} else {
+						appendAll(page, 0, page.length);
+					}
+				}
+			}
+		};
+		try (ClosableResult<Integer> results = proc.run(256)) {
+			int cnt = 0;
+			for (int n : results) {
+				assertThat(n, is(cnt / 1000));
+				cnt++;
+			}
+			assertThat(cnt, is(10000));
+		}
+	}
+
+	@Test
+	public void testToPublisher() throws Exception {
+		IntAsyncProcess proc = new IntAsyncProcess(10000);
+		List<Integer> values = Flowable.fromPublisher(proc.toPublisher()).take(100).toList().blockingGet();
+		assertThat(values.size(), is(100));
+		assertThat(values.get(99), is(100));
+	}
+
+	@Test
+	public void testToFlowable() throws Exception {
+		IntAsyncProcess proc = new IntAsyncProcess(10000);
+		assertThat(proc.toFlowable().count().blockingGet(), is(10000L));
+	}
+
+	@Test
+	public void testRunPush() throws Exception {
+		final AtomicLong count = new AtomicLong(0);
+		ExecResult result = new IntAsyncProcess(10000).runPush(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				count.incrementAndGet();
+			}
+		});
+		assertThat(count.get(), is(10000L));
+		assertThat(result.getProcessed(), is(10000L));
+	}
 }
@@ -0,0 +1,69 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BufferSizerTest {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInit_minZero() throws Exception {
+		new BufferSizer(16, 0, 16, 0L);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInit_maxLessThanMin() throws Exception {
+		new BufferSizer(16, 32, 16, 0L);
+	}
+
+	@Test
+	public void testInit_clamp() throws Exception {
+		assertThat(new BufferSizer(4096, 16, 1024, 0L).getWindow(), is(1024));
+		assertThat(new BufferSizer(1, 16, 1024, 0L).getWindow(), is(16));
+	}
+
+	@Test
+	public void testUpdate_grow() throws Exception {
+		BufferSizer sizer = new BufferSizer(16, 16, 1024, 0L);
+		// 1M values/sec
+		long count = 0;
+		for (int i = 1; i <= 10; i++) {
+			count += 1000;
+			sizer.update(count, count, i * MS);
+		}
+		assertThat(sizer.getWindow(), is(1024));
+	}
+
+	@Test
+	public void testUpdate_shrink() throws Exception {
+		BufferSizer sizer = new BufferSizer(1024, 16, 1024, 0L);
+		// 100 values/sec
+		for (int i = 1; i <= 10; i++) {
+			sizer.update(i, i, i * 10 * MS);
+		}
+		assertThat(sizer.getWindow(), is(16));
+	}
+
+	@Test
+	public void testUpdate_shortSample() throws Exception {
+		BufferSizer sizer = new BufferSizer(16, 16, 1024, 0L);
+		assertThat(sizer.update(10000, 10000, MS / 2), is(16));
+		// accumulated from the last sample
+		assertThat(sizer.update(10000, 10000, MS), is(32));
+	}
+
+	@Test
+	public void testUpdate_stable() throws Exception {
+		BufferSizer sizer = new BufferSizer(256, 16, 1024, 0L);
+		// 10000 values/sec -> about 200 values in 20ms
+		for (int i = 1; i <= 10; i++) {
+			sizer.update(i * 10, i * 10, i * MS);
+		}
+		assertThat(sizer.getWindow(), is(256));
+	}
+}
@@ -2,17 +2,44 @@ package info.bunji.asyncutil;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 
+import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
+import info.bunji.asyncutil.ClosableResult.CloseMode;
+import info.bunji.asyncutil.functions.PostFunc;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+
 @FixMethodOrder
 public class ClosableResultTest extends AsyncTestBase {
 
@@ -179,4 +206,584 @@ public class ClosableResultTest extends AsyncTestBase {
 			assertThat(results.toList().size(), is(size));
 		}
 	}
+
+	@Test
+	public void testFromItetrable_order() throws Exception {
+		int size = 100000;
+		List<Integer> source = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			source.add(i);
+		}
+		try (ClosableResult<Integer> results = new ClosableResult<>(source, 10)) {
+			int expected = 0;
+			for (int n : results) {
+				assertThat(n, is(expected++));
+			}
+			assertThat(expected, is(size));
+		}
+	}
+
+	@Test
+	public void testMapParallel_order() throws Exception {
+		int size = 2000;
+		Function<Integer, String> fn = new Function<Integer, String>() {
+			@Override
+			public String apply(Integer n) throws Exception {
+				if (n % 100 == 0) {
+					Thread.sleep(2);
+				}
+				return "v" + n;
+			}
+		};
+		try (ClosableResult<String> results = new IntAsyncProcess(size).run().mapParallel(fn, 4, 16)) {
+			int expected = 1;
+			for (String s : results) {
+				assertThat(s, is("v" + expected++));
+			}
+			assertThat(expected, is(size + 1));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testMapParallel_exception() throws Exception {
+		Function<Integer, Integer> fn = new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer n) throws Exception {
+				if (n == 50) {
+					throw new IllegalStateException("error in map. n=" + n);
+				}
+				return n;
+			}
+		};
+		try (ClosableResult<Integer> results = new IntAsyncProcess(100).run().mapParallel(fn, 2, 4)) {
+			results.toList();
+		}
+	}
+
+	@Test
+	public void testMapParallel_close() throws Exception {
+		final AtomicBoolean disposed = new AtomicBoolean(false);
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new IntExecAction(Integer.MAX_VALUE)).setPostFunc(new PostFunc() {
+			@Override
+			public void execute(ExecResult result) {
+				disposed.set(true);
+			}
+		});
+		Function<Integer, Integer> fn = new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer n) throws Exception {
+				return n * 2;
+			}
+		};
+		try (ClosableResult<Integer> results = proc.run().mapParallel(fn, 2, 8)) {
+			Iterator<Integer> it = results.iterator();
+			for (int i = 1; i <= 100; i++) {
+				assertThat(it.next(), is(i * 2));
+			}
+		}
+		Thread.sleep(200);
+		assertThat(disposed.get(), is(true));
+	}
+
+	@Test
+	public void testMapParallel_executor() throws Exception {
+		final AtomicInteger running = new AtomicInteger(0);
+		final AtomicInteger maxRunning = new AtomicInteger(0);
+		Function<Integer, Integer> fn = new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer n) throws Exception {
+				int r = running.incrementAndGet();
+				maxRunning.accumulateAndGet(r, new IntBinaryOperator() {
+					@Override
+					public int applyAsInt(int left, int right) {
+						return Math.max(left, right);
+					}
+				});
+				if (n % 50 == 0) {
+					Thread.sleep(1);
+				}
+				running.decrementAndGet();
+				return n;
+			}
+		};
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try (ClosableResult<Integer> results = new IntAsyncProcess(1000).run().mapParallel(fn, 3, 32, executor)) {
+			int expected = 1;
+			for (int n : results) {
+				assertThat(n, is(expected++));
+			}
+			assertThat(expected, is(1001));
+			assertThat(maxRunning.get(), lessThanOrEqualTo(3));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testBatches() throws Exception {
+		int size = 10000;
+		int expected = 1;
+		try (ClosableResult<Integer> results = new IntAsyncProcess(size).run(256)) {
+			for (List<Integer> batch : results.batches(100, 1, TimeUnit.SECONDS)) {
+				assertThat(batch.size(), lessThanOrEqualTo(100));
+				for (int n : batch) {
+					assertThat(n, is(expected++));
+				}
+			}
+		}
+		assertThat(expected, is(size + 1));
+	}
+
+	@Test
+	public void testBatches_maxWait() throws Exception {
+		AsyncProc<Integer> proc = new AsyncProc<>(new ExecuteFunc<Integer>() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < 5; i++) {
+					append(i);
+					Thread.sleep(100);
+				}
+			}
+		});
+		int count = 0;
+		int batchCount = 0;
+		try (ClosableResult<Integer> results = proc.run()) {
+			for (List<Integer> batch : results.batches(1000, 10, TimeUnit.MILLISECONDS)) {
+				assertThat(batch.size(), lessThan(1000));
+				count += batch.size();
+				batchCount++;
+			}
+		}
+		assertThat(count, is(5));
+		assertThat(batchCount, is(5));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testBatches_exception() throws Exception {
+		try (ClosableResult<Integer> results = new IntAsyncProcess(1000).setThrow(500).run(true)) {
+			int count = 0;
+			try {
+				for (List<Integer> batch : results.batches(64, 0, TimeUnit.MILLISECONDS)) {
+					count += batch.size();
+				}
+			} finally {
+				assertThat(count, is(500));
+			}
+		}
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		int size = 10000;
+		try (Stream<Integer> s = new IntAsyncProcess(size).run(256).stream()) {
+			List<Integer> list = s.collect(Collectors.<Integer>toList());
+			assertThat(list.size(), is(size));
+			for (int i = 0; i < size; i++) {
+				assertThat(list.get(i), is(i + 1));
+			}
+		}
+	}
+
+	@Test
+	public void testStream_parallel() throws Exception {
+		int size = 100000;
+		try (Stream<Integer> s = new IntAsyncProcess(size).run().stream()) {
+			// ordered collect
+			List<Integer> list = s.parallel().collect(Collectors.<Integer>toList());
+			assertThat(list.size(), is(size));
+			for (int i = 0; i < size; i++) {
+				assertThat(list.get(i), is(i + 1));
+			}
+		}
+	}
+
+	@Test
+	public void testStream_split() throws Exception {
+		try (ClosableResult<Integer> results = new IntAsyncProcess(10000).run()) {
+			Spliterator<Integer> split = results.stream().spliterator();
+			Spliterator<Integer> chunk = split.trySplit();
+			assertThat(chunk.estimateSize(), greaterThan(0L));
+			assertThat(chunk.hasCharacteristics(Spliterator.SIZED), is(true));
+			List<Integer> list = new ArrayList<>();
+			while (chunk.tryAdvance(new Consumer<Integer>() {
+				@Override
+				public void accept(Integer n) {
+					list.add(n);
+				}
+			}));
+			assertThat(list.get(0), is(1));
+		}
+	}
+
+	@Test
+	public void testStream_close() throws Exception {
+		PostFunc postFunc = spy(new TestPostAction());
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new IntExecAction(Integer.MAX_VALUE)).setPostFunc(postFunc);
+		try (Stream<Integer> s = proc.run().stream()) {
+			assertThat(s.limit(100).count(), is(100L));
+		}
+		Thread.sleep(100);
+		assertThat(proc.isDisposed(), is(true));
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+	}
+
+	@Test
+	public void testRun_adaptive() throws Exception {
+		int size = 1000000;
+		RunOptions options = new RunOptions().setBufSize(16).setAdaptive(16, 8192);
+		try (ClosableResult<Integer> results = new IntAsyncProcess(size).run(options)) {
+			int expected = 1;
+			for (int n : results) {
+				assertThat(n, is(expected++));
+			}
+			assertThat(expected, is(size + 1));
+			assertThat(results.getBufferWindow(), greaterThan(16));
+		}
+	}
+
+	@Test
+	public void testRun_adaptive_slow() throws Exception {
+		AsyncProc<Integer> proc = new AsyncProc<>(new ExecuteFunc<Integer>() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < 20; i++) {
+					append(i);
+					Thread.sleep(5);
+				}
+			}
+		});
+		RunOptions options = new RunOptions().setBufSize(1024).setAdaptive(8, 1024);
+		try (ClosableResult<Integer> results = proc.run(options)) {
+			assertThat(results.toList().size(), is(20));
+			assertThat(results.getBufferWindow(), lessThan(1024));
+		}
+	}
+
+	@Test
+	public void testRun_adaptive_burst() throws Exception {
+		// resize repeatedly while values are buffered
+		AsyncProc<Integer> proc = new AsyncProc<>(new ExecuteFunc<Integer>() {
+			@Override
+			public void execute() throws Exception {
+				int n = 0;
+				for (int i = 0; i < 20; i++) {
+					for (int j = 0; j < 20000; j++) {
+						append(n++);
+					}
+					Thread.sleep(10);
+				}
+			}
+		});
+		RunOptions options = new RunOptions().setAdaptive(4, 4096);
+		try (ClosableResult<Integer> results = proc.run(options)) {
+			int expected = 0;
+			Iterator<Integer> it = results.iterator();
+			while (it.hasNext()) {
+				assertThat(it.next(), is(expected++));
+				if (expected % 50000 == 0) {
+					// slow consumer
+					Thread.sleep(20);
+				}
+			}
+			assertThat(expected, is(400000));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRun_adaptive_invalid() throws Exception {
+		new RunOptions().setAdaptive(16, 8);
+	}
+
+	/**
+	 * execute func sleeping between appends.
+	 */
+	private static class SleepExecAction extends ExecuteFunc<Integer> {
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean interrupted = new AtomicBoolean(false);
+		private final long sleepMillis;
+
+		SleepExecAction(long sleepMillis) {
+			this.sleepMillis = sleepMillis;
+		}
+
+		@Override
+		public void execute() throws Exception {
+			append(1);
+			started.countDown();
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException ie) {
+				interrupted.set(true);
+				throw ie;
+			}
+			append(2);
+		}
+	}
+
+	@Test
+	public void testCloseAsync_abort() throws Exception {
+		SleepExecAction action = new SleepExecAction(10000);
+		ClosableResult<Integer> results = new AsyncProc<>(action).run();
+		assertThat(results.iterator().next(), is(1));
+		action.started.await();
+
+		ExecResult result = results.closeAsync(CloseMode.ABORT).get(2, TimeUnit.SECONDS);
+		assertThat(action.interrupted.get(), is(true));
+		assertThat(result.getCloseLatencyNanos(), lessThan(TimeUnit.SECONDS.toNanos(1)));
+		assertThat(result.getCloseLatencyNanos() >= 0, is(true));
+		assertThat(result.isSuccess(), is(true));
+	}
+
+	@Test
+	public void testCloseAsync_cooperative() throws Exception {
+		SleepExecAction action = new SleepExecAction(300);
+		ClosableResult<Integer> results = new AsyncProc<>(action).run();
+		assertThat(results.iterator().next(), is(1));
+		action.started.await();
+
+		ExecResult result = results.closeAsync(CloseMode.COOPERATIVE).get(2, TimeUnit.SECONDS);
+		assertThat(action.interrupted.get(), is(false));
+		// released at next append()
+		assertThat(result.getCloseLatencyNanos(), greaterThan(TimeUnit.MILLISECONDS.toNanos(100)));
+		// same future
+		assertThat(results.closeAsync(CloseMode.ABORT).get() == result, is(true));
+	}
+
+	@Test
+	public void testClose_closeMode() throws Exception {
+		SleepExecAction action = new SleepExecAction(300);
+		RunOptions options = new RunOptions().setCloseMode(CloseMode.COOPERATIVE);
+		ClosableResult<Integer> results = new AsyncProc<>(action).run(options);
+		assertThat(results.iterator().next(), is(1));
+		action.started.await();
+		results.close();
+		results.closeAsync().get(2, TimeUnit.SECONDS);
+		assertThat(action.interrupted.get(), is(false));
+	}
+
+	@Test
+	public void testCloseAsync_interruptCleared() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			SleepExecAction action = new SleepExecAction(10000);
+			RunOptions options = new RunOptions().setScheduler(Schedulers.from(executor));
+			ClosableResult<Integer> results = new AsyncProc<>(action).run(options);
+			assertThat(results.iterator().next(), is(1));
+			action.started.await();
+			results.closeAsync().get(2, TimeUnit.SECONDS);
+
+			// the interrupt does not remain on the pooled thread
+			assertThat(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return Thread.currentThread().isInterrupted();
+				}
+			}).get(), is(false));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCloseAsync_finished() throws Exception {
+		ClosableResult<Integer> results = new IntAsyncProcess(100).run();
+		assertThat(results.toList().size(), is(100));
+		ExecResult result = results.closeAsync().get(2, TimeUnit.SECONDS);
+		assertThat(result.getCloseLatencyNanos(), is(-1L));
+		assertThat(result.getProcessed(), is(100L));
+	}
+
+	@Test
+	public void testToListAsync() throws Exception {
+		ClosableResult<Integer> results = new IntAsyncProcess(10000).run(256);
+		List<Integer> list = results.toListAsync().get(5, TimeUnit.SECONDS);
+		assertThat(list.size(), is(10000));
+		assertThat(list.get(9999), is(10000));
+	}
+
+	@Test
+	public void testForEachAsync() throws Exception {
+		final Thread caller = Thread.currentThread();
+		final AtomicBoolean onCaller = new AtomicBoolean(false);
+		final List<Integer> list = new ArrayList<>();
+		ClosableResult<Integer> results = new IntAsyncProcess(1000).run();
+		results.forEachAsync(new io.reactivex.functions.Consumer<Integer>() {
+			@Override
+			public void accept(Integer val) {
+				if (Thread.currentThread() == caller) {
+					onCaller.set(true);
+				}
+				list.add(val);
+			}
+		}).get(5, TimeUnit.SECONDS);
+		assertThat(list.size(), is(1000));
+		assertThat(onCaller.get(), is(false));
+	}
+
+	@Test
+	public void testCountAsync() throws Exception {
+		assertThat(new IntAsyncProcess(12345).run().countAsync().get(5, TimeUnit.SECONDS), is(12345L));
+	}
+
+	@Test
+	public void testReduceAsync() throws Exception {
+		ClosableResult<Integer> results = new IntAsyncProcess(1000).run();
+		long sum = results.reduceAsync(0L, new BiFunction<Long, Integer, Long>() {
+			@Override
+			public Long apply(Long acc, Integer val) {
+				return acc + val;
+			}
+		}).get(5, TimeUnit.SECONDS);
+		assertThat(sum, is(1000L * 1001 / 2));
+	}
+
+	@Test
+	public void testReduceAsync_error() throws Exception {
+		ClosableResult<Integer> results = new IntAsyncProcess(1000).setThrow(500).run();
+		try {
+			results.countAsync().get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause() instanceof IllegalStateException, is(true));
+		}
+	}
+
+	@Test
+	public void testReduceAsync_noWaitingThread() throws Exception {
+		ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+		final CountDownLatch resume = new CountDownLatch(1);
+		try {
+			final CountDownLatch read = new CountDownLatch(1);
+			AsyncProc<Integer> proc = new AsyncProc<>(new ExecuteFunc<Integer>() {
+				@Override
+				public void execute() throws Exception {
+					append(1);
+					resume.await();
+					append(2);
+				}
+			});
+			ClosableResult<Integer> results = proc.run(new RunOptions().setScheduler(Schedulers.from(pool)));
+			CompletableFuture<Void> future = results.forEachAsync(new io.reactivex.functions.Consumer<Integer>() {
+				@Override
+				public void accept(Integer val) {
+					read.countDown();
+				}
+			});
+			assertThat(read.await(5, TimeUnit.SECONDS), is(true));
+			Thread.sleep(100);
+			// only the process thread is active while the future is pending
+			assertThat(pool.getActiveCount(), is(1));
+			resume.countDown();
+			future.get(5, TimeUnit.SECONDS);
+			assertThat(awaitIdle(pool), is(true));
+		} finally {
+			resume.countDown();
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testReduceAsync_cancel() throws Exception {
+		PostFunc postFunc = spy(new TestPostAction());
+		AsyncProc<Integer> proc = new AsyncProc<Integer>(new IntExecAction(Integer.MAX_VALUE)).setPostFunc(postFunc);
+		ClosableResult<Integer> results = proc.run(256);
+		results.countAsync().cancel(false);
+		results.closeAsync().get(5, TimeUnit.SECONDS);
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+	}
+
+	@Test
+	public void testReduceAsync_cancelParallel() throws Exception {
+		ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+		try {
+			final CountDownLatch read = new CountDownLatch(1);
+			ParallelProc<Integer> proc = new ParallelProc<>();
+			proc.addPartition(new ExecuteFunc<Integer>() {
+				@Override
+				public void execute() throws Exception {
+					append(1);
+					Thread.sleep(10000);
+				}
+			});
+			ClosableResult<Integer> results = proc.run(new RunOptions().setScheduler(Schedulers.from(pool)));
+			CompletableFuture<Void> future = results.forEachAsync(new io.reactivex.functions.Consumer<Integer>() {
+				@Override
+				public void accept(Integer val) {
+					read.countDown();
+				}
+			});
+			// the process waits for the next value
+			assertThat(read.await(5, TimeUnit.SECONDS), is(true));
+			Thread.sleep(100);
+			future.cancel(false);
+			results.closeAsync().get(5, TimeUnit.SECONDS);
+			assertThat(awaitIdle(pool), is(true));
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testReduceAsync_cancelIterable() throws Exception {
+		ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+		final CountDownLatch resume = new CountDownLatch(1);
+		try {
+			final CountDownLatch read = new CountDownLatch(1);
+			// emits one value, then blocks
+			Iterable<Integer> source = new Iterable<Integer>() {
+				@Override
+				public Iterator<Integer> iterator() {
+					return new Iterator<Integer>() {
+						private int count = 0;
+
+						@Override
+						public boolean hasNext() {
+							if (count > 0) {
+								try {
+									resume.await();
+								} catch (InterruptedException e) {
+									// stopped
+								}
+							}
+							return true;
+						}
+
+						@Override
+						public Integer next() {
+							return ++count;
+						}
+					};
+				}
+			};
+			ClosableResult<Integer> results = new ClosableResult<>(source, 16, true, Schedulers.from(pool));
+			CompletableFuture<Void> future = results.forEachAsync(new io.reactivex.functions.Consumer<Integer>() {
+				@Override
+				public void accept(Integer val) {
+					read.countDown();
+				}
+			});
+			assertThat(read.await(5, TimeUnit.SECONDS), is(true));
+			Thread.sleep(100);
+			future.cancel(false);
+			results.closeAsync().get(5, TimeUnit.SECONDS);
+			// unblock the source, the pool must be already released
+			resume.countDown();
+			assertThat(awaitIdle(pool), is(true));
+		} finally {
+			resume.countDown();
+			pool.shutdownNow();
+		}
+	}
+
+	// wait until all pool threads are idle
+	private static boolean awaitIdle(ThreadPoolExecutor pool) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.getActiveCount() > 0) {
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
 }
@@ -0,0 +1,267 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.bunji.asyncutil.functions.Serializer;
+import info.bunji.asyncutil.functions.Weigher;
+import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
+
+public class DirectoryScanProcessTest extends AsyncTestBase {
+
+	private Path root;
+
+	private static final Function<Path, String> READER = new Function<Path, String>() {
+		@Override
+		public String apply(Path file) throws Exception {
+			return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		}
+	};
+
+	@Before
+	public void createTree() throws Exception {
+		root = Files.createTempDirectory("scan");
+	}
+
+	@After
+	public void deleteTree() throws Exception {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * create dirs^depth directories with files in each.
+	 */
+	private Set<String> createFiles(Path dir, int depth, int dirs, int files) throws IOException {
+		Set<String> names = new HashSet<>();
+		for (int i = 0; i < files; i++) {
+			Path file = dir.resolve("file" + i + (i % 2 == 0 ? ".txt" : ".log"));
+			String name = root.relativize(file).toString();
+			Files.write(file, name.getBytes(StandardCharsets.UTF_8));
+			names.add(name);
+		}
+		if (depth > 0) {
+			for (int i = 0; i < dirs; i++) {
+				names.addAll(createFiles(Files.createDirectory(dir.resolve("dir" + i)), depth - 1, dirs, files));
+			}
+		}
+		return names;
+	}
+
+	@Test
+	public void testScanPaths() throws Exception {
+		Set<String> expected = createFiles(root, 3, 3, 10);
+		Set<String> actual = new HashSet<>();
+		try (ClosableResult<Path> results = DirectoryScanProcess.of(root).setConcurrency(4).run(16)) {
+			for (Path file : results) {
+				assertThat(actual.add(root.relativize(file).toString()), is(true));
+			}
+		}
+		assertThat(actual, is(expected));
+	}
+
+	@Test
+	public void testScanContents() throws Exception {
+		Set<String> expected = createFiles(root, 2, 4, 100);
+		Set<String> actual = new HashSet<>();
+		try (ClosableResult<String> results = DirectoryScanProcess.of(root, READER).run()) {
+			for (String content : results) {
+				assertThat(actual.add(content), is(true));
+			}
+		}
+		assertThat(actual, is(expected));
+	}
+
+	@Test
+	public void testSetExecutor() throws Exception {
+		Set<String> expected = createFiles(root, 2, 4, 50);
+		Set<String> actual = new HashSet<>();
+		ExecutorService executor = Executors.newFixedThreadPool(3, AsyncExecutors.newThreadFactory("scan-test"));
+		try {
+			final AtomicBoolean otherThread = new AtomicBoolean(false);
+			Function<Path, String> reader = new Function<Path, String>() {
+				@Override
+				public String apply(Path file) throws Exception {
+					if (!Thread.currentThread().getName().startsWith("scan-test-")) {
+						otherThread.set(true);
+					}
+					return READER.apply(file);
+				}
+			};
+			// two processes share the executor
+			for (int i = 0; i < 2; i++) {
+				actual.clear();
+				DirectoryScanProcess<String> proc = DirectoryScanProcess.of(root, reader)
+														.setConcurrency(3).setExecutor(executor);
+				try (ClosableResult<String> results = proc.run()) {
+					for (String content : results) {
+						assertThat(actual.add(content), is(true));
+					}
+				}
+				assertThat(actual, is(expected));
+			}
+			assertThat(otherThread.get(), is(false));
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+	}
+
+	@Test(timeout = 20000)
+	public void testScanContents_weigher() throws Exception {
+		Set<String> expected = createFiles(root, 2, 4, 100);
+		Set<String> actual = new HashSet<>();
+		DirectoryScanProcess<String> proc = DirectoryScanProcess.of(root, READER).setConcurrency(8);
+		proc.setWeigher(new Weigher<String>() {
+			@Override
+			public long weigh(String value) {
+				return value.length();
+			}
+		}, 256);
+		try (ClosableResult<String> results = proc.run(16)) {
+			for (String content : results) {
+				assertThat(actual.add(content), is(true));
+			}
+		}
+		assertThat(actual, is(expected));
+	}
+
+	@Test(timeout = 20000)
+	public void testScanContents_spill() throws Exception {
+		Set<String> expected = createFiles(root, 2, 4, 100);
+		Set<String> actual = new HashSet<>();
+		DirectoryScanProcess<String> proc = DirectoryScanProcess.of(root, READER).setConcurrency(8);
+		proc.setSpill(new Serializer<String>() {
+			@Override
+			public void write(String value, DataOutput out) throws IOException {
+				out.writeUTF(value);
+			}
+
+			@Override
+			public String read(DataInput in) throws IOException {
+				return in.readUTF();
+			}
+		});
+		try (ClosableResult<String> results = proc.run(16)) {
+			// workers spill while the consumer is idle
+			Thread.sleep(200);
+			for (String content : results) {
+				assertThat(actual.add(content), is(true));
+			}
+		}
+		assertThat(actual, is(expected));
+	}
+
+	@Test
+	public void testFilterAndMaxDepth() throws Exception {
+		createFiles(root, 2, 2, 4);
+		DirectoryScanProcess<String> proc = DirectoryScanProcess.of(root, READER)
+				.setMaxDepth(1)
+				.setFilter(new Predicate<Path>() {
+					@Override
+					public boolean test(Path file) {
+						return file.toString().endsWith(".txt");
+					}
+				});
+		try (ClosableResult<String> results = proc.run()) {
+			// (1 + 2 dirs) * 2 txt files
+			assertThat(results.toList().size(), is(6));
+		}
+	}
+
+	@Test
+	public void testNullSkipped() throws Exception {
+		createFiles(root, 0, 0, 10);
+		DirectoryScanProcess<String> proc = DirectoryScanProcess.of(root, new Function<Path, String>() {
+			@Override
+			public String apply(Path file) throws Exception {
+				return file.toString().endsWith(".txt") ? "txt" : null;
+			}
+		});
+		try (ClosableResult<String> results = proc.run()) {
+			assertThat(results.toList().size(), is(5));
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		createFiles(root, 1, 10, 200);
+		final AtomicInteger readCount = new AtomicInteger(0);
+		DirectoryScanProcess<String> proc = DirectoryScanProcess.of(root, new Function<Path, String>() {
+			@Override
+			public String apply(Path file) throws Exception {
+				readCount.incrementAndGet();
+				return READER.apply(file);
+			}
+		}).setConcurrency(2);
+		try (ClosableResult<String> results = proc.run(8)) {
+			Iterator<String> it = results.iterator();
+			for (int i = 0; i < 10; i++) {
+				it.next();
+			}
+		}
+		Thread.sleep(200);
+		int count = readCount.get();
+		assertThat(count, lessThan(500));
+		Thread.sleep(200);
+		assertThat(readCount.get(), is(count));
+	}
+
+	@Test
+	public void testReaderError() throws Exception {
+		createFiles(root, 1, 2, 10);
+		DirectoryScanProcess<String> proc = DirectoryScanProcess.of(root, new Function<Path, String>() {
+			@Override
+			public String apply(Path file) throws Exception {
+				throw new IOException("read error.");
+			}
+		});
+		try (ClosableResult<String> results = proc.run()) {
+			results.toList();
+			fail();
+		} catch (RuntimeException re) {
+			assertThat(re.getCause() instanceof IOException, is(true));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetConcurrency_zero() throws Exception {
+		DirectoryScanProcess.of(root).setConcurrency(0);
+	}
+}
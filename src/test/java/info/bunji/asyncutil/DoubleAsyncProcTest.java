@@ -0,0 +1,46 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.PrimitiveIterator;
+
+import org.junit.Test;
+
+public class DoubleAsyncProcTest extends AsyncTestBase {
+
+	@Test
+	public void testRun() throws Exception {
+		final int size = 100000;
+		DoubleExecuteFunc func = new DoubleExecuteFunc() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < size; i++) {
+					append(i * 0.5);
+				}
+			}
+		};
+		try (DoubleClosableResult results = new DoubleAsyncProc(func).run(64)) {
+			PrimitiveIterator.OfDouble it = results.iterator();
+			int count = 0;
+			while (it.hasNext()) {
+				assertThat(it.nextDouble(), is(count++ * 0.5));
+			}
+			assertThat(count, is(size));
+		}
+	}
+
+	@Test
+	public void testToArray() throws Exception {
+		final double[] values = { 0.1, 0.2, 0.3 };
+		DoubleExecuteFunc func = new DoubleExecuteFunc() {
+			@Override
+			public void execute() throws Exception {
+				appendAll(values, 1, 2);
+			}
+		};
+		try (DoubleClosableResult results = new DoubleAsyncProc(func).run()) {
+			assertThat(results.toArray(), is(new double[] { 0.2, 0.3 }));
+		}
+	}
+}
@@ -18,6 +18,11 @@ public class ExecResultTest extends AsyncTestBase {
 		assertThat(result.getProcessed(), is(count));
 		assertThat(result.getException(), is(nullValue()));
 		assertThat(result.isSuccess(), is(true));
+		assertThat(result.getProducerWaitNanos(), is(0L));
+		assertThat(result.getConsumerWaitNanos(), is(0L));
+		assertThat(result.getBufferHighWater(), is(0L));
+		assertThat(result.getRequestCount(), is(0L));
+		assertThat(result.getFirstElementNanos(), is(-1L));
 	}
 
 	@Test
@@ -0,0 +1,129 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HashedWheelTimerTest extends AsyncTestBase {
+
+	private final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 64,
+														AsyncExecutors.getDefaultExecutor());
+
+	@After
+	public void shutdown() {
+		timer.shutdownNow();
+	}
+
+	@Test
+	public void testSchedule() throws Exception {
+		long start = System.nanoTime();
+		ScheduledFuture<String> f = timer.schedule(new java.util.concurrent.Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return "done";
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+		assertThat(f.get(), is("done"));
+		assertThat(System.nanoTime() - start, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)));
+	}
+
+	@Test
+	public void testSchedule_overRounds() throws Exception {
+		// 64 buckets * 1ms, delay spans several rounds
+		final CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 200, TimeUnit.MILLISECONDS);
+		assertThat(latch.await(2, TimeUnit.SECONDS), is(true));
+		assertThat(System.nanoTime() - start, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200)));
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final AtomicInteger count = new AtomicInteger(0);
+		List<ScheduledFuture<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			futures.add(timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					count.incrementAndGet();
+				}
+			}, 30, TimeUnit.MILLISECONDS));
+		}
+		for (int i = 0; i < futures.size(); i += 2) {
+			assertThat(futures.get(i).cancel(false), is(true));
+		}
+		Thread.sleep(200);
+		assertThat(count.get(), is(5000));
+	}
+
+	@Test
+	public void testScheduleAtFixedRate() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(5);
+		ScheduledFuture<?> f = timer.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 0, 10, TimeUnit.MILLISECONDS);
+		assertThat(latch.await(1, TimeUnit.SECONDS), is(true));
+		f.cancel(false);
+		assertThat(f.isCancelled(), is(true));
+	}
+
+	@Test
+	public void testShutdownNow() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}, 1, TimeUnit.HOURS);
+		}
+		assertThat(timer.shutdownNow().size(), is(10));
+		assertThat(timer.isTerminated(), is(true));
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testSchedule_afterShutdown() throws Exception {
+		timer.shutdown();
+		timer.execute(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+
+	@Test
+	public void testIntervalProcess() throws Exception {
+		List<ClosableResult<String>> resultList = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			TestIntervalProc proc = new TestIntervalProc(10).setCycleCount(3);
+			proc.setScheduledExecutor(timer);
+			resultList.add(proc.run());
+		}
+		long start = System.currentTimeMillis();
+		for (ClosableResult<String> results : resultList) {
+			try (ClosableResult<String> r = results) {
+				assertThat(r.toList().size(), is(3));
+			}
+		}
+		assertThat(System.currentTimeMillis() - start, lessThan(5000L));
+	}
+}
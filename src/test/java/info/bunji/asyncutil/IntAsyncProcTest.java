@@ -0,0 +1,47 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.PrimitiveIterator;
+
+import org.junit.Test;
+
+public class IntAsyncProcTest extends AsyncTestBase {
+
+	@Test
+	public void testRun() throws Exception {
+		final int size = 100000;
+		IntExecuteFunc func = new IntExecuteFunc() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < size; i++) {
+					append(i);
+				}
+			}
+		};
+		try (IntClosableResult results = new IntAsyncProc(func).run(64)) {
+			PrimitiveIterator.OfInt it = results.iterator();
+			int expected = 0;
+			while (it.hasNext()) {
+				assertThat(it.nextInt(), is(expected++));
+			}
+			assertThat(expected, is(size));
+		}
+	}
+
+	@Test
+	public void testToArray() throws Exception {
+		final int[] values = { 1, 2, 3, 4, 5 };
+		IntExecuteFunc func = new IntExecuteFunc() {
+			@Override
+			public void execute() throws Exception {
+				appendAll(values);
+				appendAll(values);
+			}
+		};
+		try (IntClosableResult results = new IntAsyncProc(func).run(4)) {
+			assertThat(results.toArray(), is(new int[] { 1, 2, 3, 4, 5, 1, 2, 3, 4, 5 }));
+		}
+	}
+}
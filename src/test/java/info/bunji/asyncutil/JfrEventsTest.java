@@ -0,0 +1,78 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrEventsTest extends AsyncTestBase {
+
+	@Test
+	public void testEvents() throws Exception {
+		Path file = Files.createTempFile("asyncutil", ".jfr");
+		try (Recording recording = new Recording()) {
+			for (String name : new String[] { "ProcessStart", "ProcessEnd", "ResultClose" }) {
+				recording.enable("info.bunji.asyncutil." + name);
+			}
+			for (String name : new String[] { "ProducerBlocked", "ConsumerBlocked" }) {
+				recording.enable("info.bunji.asyncutil." + name).withThreshold(Duration.ofMillis(1));
+			}
+			recording.start();
+
+			// slow consumer
+			try (ClosableResult<Integer> results = new IntAsyncProcess(20).run(new RunOptions().setBufSize(4).setDirect(true))) {
+				for (@SuppressWarnings("unused") int n : results) {
+					Thread.sleep(5);
+				}
+			}
+			// slow producer
+			AsyncProc<Integer> proc = new AsyncProc<>(new AsyncProc.ExecuteFunc<Integer>() {
+				@Override
+				public void execute() throws Exception {
+					for (int i = 0; i < 5; i++) {
+						Thread.sleep(5);
+						append(i);
+					}
+				}
+			});
+			try (ClosableResult<Integer> results = proc.run()) {
+				assertThat(results.toList().size(), is(5));
+			}
+			Thread.sleep(100);
+
+			recording.stop();
+			recording.dump(file);
+		}
+
+		List<String> names = new ArrayList<>();
+		List<RecordedEvent> ends = new ArrayList<>();
+		for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+			names.add(e.getEventType().getName());
+			if (e.getEventType().getName().endsWith("ProcessEnd")) {
+				ends.add(e);
+			}
+		}
+		Files.deleteIfExists(file);
+
+		assertThat(names, hasItem("info.bunji.asyncutil.ProcessStart"));
+		assertThat(names, hasItem("info.bunji.asyncutil.ProcessEnd"));
+		assertThat(names, hasItem("info.bunji.asyncutil.ProducerBlocked"));
+		assertThat(names, hasItem("info.bunji.asyncutil.ConsumerBlocked"));
+		assertThat(names, hasItem("info.bunji.asyncutil.ResultClose"));
+		assertThat(ends.size(), is(2));
+		assertThat(ends.get(0).getLong("processed") + ends.get(1).getLong("processed"), is(25L));
+		assertThat(ends.get(0).getString("processName").length(), greaterThan(0));
+	}
+}
@@ -0,0 +1,219 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import info.bunji.asyncutil.functions.PostFunc;
+
+public class LongAsyncProcTest extends AsyncTestBase {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExecFunc_Null() throws Exception {
+		new LongAsyncProc(null);
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		int size = 100000;
+		try (LongClosableResult results = new LongAsyncProc(new LongRangeFunc(size)).run(64)) {
+			PrimitiveIterator.OfLong it = results.iterator();
+			long expected = 0;
+			while (it.hasNext()) {
+				assertThat(it.nextLong(), is(expected++));
+			}
+			assertThat(expected, is((long) size));
+		}
+	}
+
+	@Test
+	public void testAppendAll() throws Exception {
+		final long[] values = new long[1000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i;
+		}
+		LongExecuteFunc func = new LongExecuteFunc() {
+			@Override
+			public void execute() throws Exception {
+				for (int i = 0; i < 10; i++) {
+					appendAll(values, 0, 100);
+					appendAll(values, 100, 900);
+				}
+			}
+		};
+		try (LongClosableResult results = new LongAsyncProc(func).run(100)) {
+			long[] array = results.toArray();
+			assertThat(array.length, is(10000));
+			for (int i = 0; i < array.length; i++) {
+				assertThat(array[i], is((long) (i % 1000)));
+			}
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testAppendAll_outOfBounds() throws Exception {
+		LongExecuteFunc func = new LongExecuteFunc() {
+			@Override
+			public void execute() throws Exception {
+				appendAll(new long[10], 5, 10);
+			}
+		};
+		try (LongClosableResult results = new LongAsyncProc(func).run()) {
+			results.toArray();
+		}
+	}
+
+	@Test
+	public void testRun_exception() throws Exception {
+		LongExecuteFunc func = new LongExecuteFunc() {
+			@Override
+			public void execute() throws Exception {
+				for (long i = 0; i < 100; i++) {
+					append(i);
+				}
+				throw new IllegalStateException("error in execute()");
+			}
+		};
+		try (LongClosableResult results = new LongAsyncProc(func).run(1000, true)) {
+			PrimitiveIterator.OfLong it = results.iterator();
+			int count = 0;
+			try {
+				while (it.hasNext()) {
+					it.nextLong();
+					count++;
+				}
+			} catch (IllegalStateException ise) {
+				assertThat(count, is(100));
+				return;
+			}
+			throw new AssertionError("exception not thrown.");
+		}
+	}
+
+	@Test
+	public void testPostFunc() throws Exception {
+		final AtomicReference<ExecResult> result = new AtomicReference<>();
+		PostFunc postFunc = spy(new PostFunc() {
+			@Override
+			public void execute(ExecResult r) {
+				result.set(r);
+			}
+		});
+		try (LongClosableResult results = new LongAsyncProc(new LongRangeFunc(5000)).setPostFunc(postFunc).run(16)) {
+			assertThat(results.toArray().length, is(5000));
+		}
+		Thread.sleep(100);
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+		assertThat(result.get().getProcessed(), is(5000L));
+		assertThat(result.get().getProducerWaitNanos(), greaterThan(0L));
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		final AtomicReference<ExecResult> result = new AtomicReference<>();
+		LongAsyncProc proc = new LongAsyncProc(new LongRangeFunc(Long.MAX_VALUE)).setPostFunc(new PostFunc() {
+			@Override
+			public void execute(ExecResult r) {
+				result.set(r);
+			}
+		});
+		try (LongClosableResult results = proc.run(16)) {
+			PrimitiveIterator.OfLong it = results.iterator();
+			for (int i = 0; i < 100; i++) {
+				it.nextLong();
+			}
+		}
+		Thread.sleep(100);
+		assertThat(result.get().isSuccess(), is(true));
+	}
+
+	@Test
+	public void testCloseAsync_abort() throws Exception {
+		SleepFunc func = new SleepFunc(10000);
+		LongClosableResult results = new LongAsyncProc(func).run();
+		assertThat(results.iterator().nextLong(), is(1L));
+		func.started.await();
+
+		ExecResult result = results.closeAsync(ClosableResult.CloseMode.ABORT).get(2, TimeUnit.SECONDS);
+		assertThat(func.interrupted.get(), is(true));
+		assertThat(result.getCloseLatencyNanos(), lessThan(TimeUnit.SECONDS.toNanos(1)));
+		assertThat(result.getCloseLatencyNanos() >= 0, is(true));
+		assertThat(result.isSuccess(), is(true));
+	}
+
+	@Test
+	public void testCloseAsync_cooperative() throws Exception {
+		SleepFunc func = new SleepFunc(300);
+		RunOptions options = new RunOptions().setCloseMode(ClosableResult.CloseMode.COOPERATIVE);
+		LongClosableResult results = new LongAsyncProc(func).run(options);
+		assertThat(results.iterator().nextLong(), is(1L));
+		func.started.await();
+		results.close();
+
+		ExecResult result = results.closeAsync().get(2, TimeUnit.SECONDS);
+		assertThat(func.interrupted.get(), is(false));
+		// released at next append()
+		assertThat(result.getCloseLatencyNanos(), greaterThan(TimeUnit.MILLISECONDS.toNanos(100)));
+	}
+
+	@Test
+	public void testCloseAsync_finished() throws Exception {
+		LongClosableResult results = new LongAsyncProc(new LongRangeFunc(100)).run();
+		assertThat(results.toArray().length, is(100));
+		ExecResult result = results.closeAsync().get(2, TimeUnit.SECONDS);
+		assertThat(result.getCloseLatencyNanos(), is(-1L));
+		assertThat(result.getProcessed(), is(100L));
+	}
+
+	// append a value, then sleep before the next append
+	static class SleepFunc extends LongExecuteFunc {
+		private final long sleep;
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean interrupted = new AtomicBoolean(false);
+
+		SleepFunc(long sleep) {
+			this.sleep = sleep;
+		}
+
+		@Override
+		public void execute() throws Exception {
+			append(1);
+			started.countDown();
+			try {
+				Thread.sleep(sleep);
+			} catch (InterruptedException e) {
+				interrupted.set(true);
+				throw e;
+			}
+			append(2);
+		}
+	}
+
+	static class LongRangeFunc extends LongExecuteFunc {
+		private final long size;
+
+		LongRangeFunc(long size) {
+			this.size = size;
+		}
+
+		@Override
+		public void execute() throws Exception {
+			for (long i = 0; i < size; i++) {
+				append(i);
+			}
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.bunji.asyncutil.MappedFileProcess.Framing;
+import io.reactivex.functions.Function;
+
+public class MappedFileProcessTest extends AsyncTestBase {
+
+	private Path file;
+
+	private static final Function<ByteBuffer, String> DECODER = new Function<ByteBuffer, String>() {
+		@Override
+		public String apply(ByteBuffer record) throws Exception {
+			return StandardCharsets.UTF_8.decode(record).toString();
+		}
+	};
+
+	@Before
+	public void createFile() throws Exception {
+		file = Files.createTempFile("mapped", ".dat");
+	}
+
+	@After
+	public void deleteFile() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testLines() throws Exception {
+		Files.write(file, "aaa\nbb\r\n\ncccc".getBytes(StandardCharsets.UTF_8));
+		try (ClosableResult<String> results = MappedFileProcess.of(file, Framing.LINES, DECODER).run()) {
+			assertThat(results.toList(), contains("aaa", "bb", "", "cccc"));
+		}
+	}
+
+	@Test
+	public void testLines_smallWindow() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			String line = "line-" + i;
+			expected.add(line);
+			sb.append(line).append('\n');
+		}
+		// longer than window
+		expected.add("0123456789012345678901234567890123456789");
+		sb.append("0123456789012345678901234567890123456789\n");
+		Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+		MappedFileProcess<String> proc = MappedFileProcess.of(file, Framing.LINES, DECODER).setWindowSize(16);
+		try (ClosableResult<String> results = proc.run()) {
+			assertThat(results.toList(), is(expected));
+		}
+	}
+
+	@Test
+	public void testLines_windowShrink() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		// longer than window
+		expected.add("0123456789012345678901234567890123456789");
+		sb.append("0123456789012345678901234567890123456789\n");
+		for (int i = 0; i < 100; i++) {
+			String line = "s" + i;
+			expected.add(line);
+			sb.append(line).append('\n');
+		}
+		Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+		final List<Long> windows = new ArrayList<>();
+		final AtomicReference<MappedFileProcess<String>> proc = new AtomicReference<>();
+		proc.set(MappedFileProcess.of(file, Framing.LINES, new Function<ByteBuffer, String>() {
+			@Override
+			public String apply(ByteBuffer record) throws Exception {
+				// called on the process thread
+				windows.add(proc.get().getWindow());
+				return DECODER.apply(record);
+			}
+		}).setWindowSize(16));
+		try (ClosableResult<String> results = proc.get().run()) {
+			assertThat(results.toList(), is(expected));
+		}
+		// grown for the long line only
+		assertThat(windows.get(0), is(64L));
+		assertThat(windows.get(windows.size() - 1), is(16L));
+		assertThat(proc.get().getWindow(), is(16L));
+	}
+
+	@Test
+	public void testLengthPrefixed() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int i = 0; i < 1000; i++) {
+			byte[] record = ("record-" + i).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(record.length);
+			out.write(record);
+		}
+		out.close();
+		Files.write(file, bytes.toByteArray());
+
+		MappedFileProcess<ByteBuffer> proc = MappedFileProcess.of(file, Framing.LENGTH_PREFIXED).setWindowSize(100);
+		int count = 0;
+		try (ClosableResult<ByteBuffer> results = proc.run(16)) {
+			for (ByteBuffer record : results) {
+				assertThat(record.isReadOnly(), is(true));
+				assertThat(DECODER.apply(record), is("record-" + count++));
+			}
+		}
+		assertThat(count, is(1000));
+	}
+
+	@Test
+	public void testLengthPrefixed_truncated() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(3);
+		out.write(new byte[3]);
+		out.writeInt(10);
+		out.write(new byte[5]);
+		out.close();
+		Files.write(file, bytes.toByteArray());
+
+		int count = 0;
+		try (ClosableResult<ByteBuffer> results = MappedFileProcess.of(file, Framing.LENGTH_PREFIXED).run(true)) {
+			for (ByteBuffer record : results) {
+				assertThat(record.remaining(), is(3));
+				count++;
+			}
+			fail();
+		} catch (RuntimeException re) {
+			assertThat(re.getCause() instanceof IOException, is(true));
+		}
+		assertThat(count, is(1));
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append(i).append('\n');
+		}
+		Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+		try (ClosableResult<String> results = MappedFileProcess.of(file, Framing.LINES, DECODER).run(64)) {
+			Iterator<String> it = results.iterator();
+			for (int i = 0; i < 100; i++) {
+				assertThat(it.next(), is(String.valueOf(i)));
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		try (ClosableResult<ByteBuffer> results = MappedFileProcess.of(file, Framing.LINES).run()) {
+			assertThat(results.toList().size(), is(0));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetWindowSize_zero() throws Exception {
+		MappedFileProcess.of(file, Framing.LINES).setWindowSize(0);
+	}
+}
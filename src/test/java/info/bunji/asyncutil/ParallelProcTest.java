@@ -0,0 +1,211 @@
+package info.bunji.asyncutil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import info.bunji.asyncutil.AsyncProc.ExecuteFunc;
+import info.bunji.asyncutil.functions.PostFunc;
+
+public class ParallelProcTest extends AsyncTestBase {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddPartition_Null() throws Exception {
+		new ParallelProc<Integer>().addPartition(null);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRun_noPartition() throws Exception {
+		new ParallelProc<Integer>().run();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetConcurrency_Zero() throws Exception {
+		new ParallelProc<Integer>().setConcurrency(0);
+	}
+
+	@Test
+	public void testRun_unordered() throws Exception {
+		List<Integer> expected = new ArrayList<>();
+		ParallelProc<Integer> proc = new ParallelProc<>();
+		for (int i = 0; i < 4; i++) {
+			proc.addPartition(new RangeFunc(i * 1000, (i + 1) * 1000));
+		}
+		for (int i = 0; i < 4000; i++) {
+			expected.add(i);
+		}
+		try (ClosableResult<Integer> results = proc.run()) {
+			assertThat(results.toList(), containsInAnyOrder(expected.toArray()));
+		}
+	}
+
+	@Test
+	public void testRun_ordered() throws Exception {
+		ParallelProc<Integer> proc = new ParallelProc<Integer>().setOrdered(true).setConcurrency(3);
+		for (int i = 0; i < 5; i++) {
+			proc.addPartition(new RangeFunc(i * 1000, (i + 1) * 1000));
+		}
+		try (ClosableResult<Integer> results = proc.run(new RunOptions().setBufSize(64))) {
+			int expected = 0;
+			for (int val : results) {
+				assertThat(val, is(expected++));
+			}
+			assertThat(expected, is(5000));
+		}
+	}
+
+	@Test
+	public void testRun_concurrency() throws Exception {
+		final AtomicInteger running = new AtomicInteger(0);
+		final AtomicInteger maxRunning = new AtomicInteger(0);
+		ParallelProc<Integer> proc = new ParallelProc<Integer>().setConcurrency(2);
+		for (int i = 0; i < 6; i++) {
+			proc.addPartition(new ExecuteFunc<Integer>() {
+				@Override
+				public void execute() throws Exception {
+					int n = running.incrementAndGet();
+					maxRunning.set(Math.max(maxRunning.get(), n));
+					Thread.sleep(20);
+					append(n);
+					running.decrementAndGet();
+				}
+			});
+		}
+		try (ClosableResult<Integer> results = proc.run()) {
+			assertThat(results.toList().size(), is(6));
+		}
+		assertThat(maxRunning.get(), lessThanOrEqualTo(2));
+	}
+
+	@Test
+	public void testRun_postFunc() throws Exception {
+		final AtomicReference<ExecResult> result = new AtomicReference<>();
+		PostFunc postFunc = spy(new PostFunc() {
+			@Override
+			public void execute(ExecResult r) {
+				result.set(r);
+			}
+		});
+		ParallelProc<Integer> proc = new ParallelProc<Integer>().setPostFunc(postFunc);
+		for (int i = 0; i < 3; i++) {
+			proc.addPartition(new IntExecAction(1000));
+		}
+		try (ClosableResult<Integer> results = proc.run()) {
+			assertThat(results.toList().size(), is(3000));
+		}
+		Thread.sleep(100);
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+		assertThat(result.get().getProcessed(), is(3000L));
+		assertThat(result.get().isSuccess(), is(true));
+	}
+
+	@Test
+	public void testRun_exception() throws Exception {
+		final AtomicReference<ExecResult> result = new AtomicReference<>();
+		ParallelProc<Integer> proc = new ParallelProc<Integer>().setPostFunc(new PostFunc() {
+			@Override
+			public void execute(ExecResult r) {
+				result.set(r);
+			}
+		});
+		proc.addPartition(new IntExecAction(1000).setThrow(10));
+		proc.addPartition(new InfiniteFunc());
+		try (ClosableResult<Integer> results = proc.run()) {
+			results.toList();
+		} catch (IllegalStateException ise) {
+			// exception in partition
+		}
+		Thread.sleep(100);
+		assertThat(result.get(), notNullValue());
+		assertThat(result.get().getException() instanceof IllegalStateException, is(true));
+	}
+
+	@Test
+	public void testClose_cancelPartitions() throws Exception {
+		PostFunc postFunc = spy(new TestPostAction());
+		ParallelProc<Integer> proc = new ParallelProc<Integer>().setConcurrency(2).setPostFunc(postFunc);
+		for (int i = 0; i < 4; i++) {
+			proc.addPartition(new InfiniteFunc());
+		}
+		try (ClosableResult<Integer> results = proc.run(new RunOptions().setBufSize(16))) {
+			Iterator<Integer> it = results.iterator();
+			for (int i = 0; i < 100; i++) {
+				it.next();
+			}
+		}
+		Thread.sleep(100);
+		verify(postFunc, times(1)).execute(any(ExecResult.class));
+	}
+
+	@Test
+	public void testClose_otherThread() throws Exception {
+		ParallelProc<Integer> proc = new ParallelProc<>();
+		proc.addPartition(new ExecuteFunc<Integer>() {
+			@Override
+			public void execute() throws Exception {
+				append(1);
+				Thread.sleep(10000);
+			}
+		});
+		final ClosableResult<Integer> results = proc.run();
+		final Iterator<Integer> it = results.iterator();
+		assertThat(it.next(), is(1));
+
+		final CountDownLatch finished = new CountDownLatch(1);
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				// blocked until closed
+				if (!it.hasNext()) {
+					finished.countDown();
+				}
+			}
+		};
+		consumer.start();
+		Thread.sleep(100);
+		results.close();
+		assertThat(finished.await(2, TimeUnit.SECONDS), is(true));
+	}
+
+	static class RangeFunc extends ExecuteFunc<Integer> {
+		private final int from;
+		private final int to;
+
+		RangeFunc(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public void execute() throws Exception {
+			for (int i = from; i < to; i++) {
+				append(i);
+			}
+		}
+	}
+
+	static class InfiniteFunc extends ExecuteFunc<Integer> {
+		@Override
+		public void execute() throws Exception {
+			for (int i = 0; ; i++) {
+				append(i);
+			}
+		}
+	}
+}